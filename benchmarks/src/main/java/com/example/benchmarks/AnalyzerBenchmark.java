@@ -0,0 +1,96 @@
+package com.example.benchmarks;
+
+import com.example.Category;
+import com.example.Perishable;
+import com.example.Product;
+import com.example.WarehouseAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every query on {@link WarehouseAnalyzer}, each running against the full synthetic inventory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AnalyzerState {
+        WarehouseAnalyzer analyzer;
+        Category category;
+
+        @Setup(Level.Trial)
+        public void setUp(WarehouseState state) {
+            analyzer = new WarehouseAnalyzer(state.warehouse);
+            category = state.generator.categories()[0];
+        }
+    }
+
+    @Benchmark
+    public List<Product> findProductsInCategory(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.findProductsInCategory(s.category);
+    }
+
+    @Benchmark
+    public List<Product> findProductsInPriceRange(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.findProductsInPriceRange(new BigDecimal("100"), new BigDecimal("500"));
+    }
+
+    @Benchmark
+    public List<Perishable> findProductsExpiringWithinDays(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.findProductsExpiringWithinDays(3);
+    }
+
+    @Benchmark
+    public List<Product> searchProductsByName(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.searchProductsByName("milk");
+    }
+
+    @Benchmark
+    public List<Product> findProductsAbovePrice(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.findProductsAbovePrice(new BigDecimal("1000"));
+    }
+
+    @Benchmark
+    public Map<Category, BigDecimal> calculateWeightedAveragePriceByCategory(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.calculateWeightedAveragePriceByCategory();
+    }
+
+    @Benchmark
+    public Optional<BigDecimal> calculateWeightedAveragePrice(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.calculateWeightedAveragePrice(s.category);
+    }
+
+    @Benchmark
+    public Map<Product, BigDecimal> calculateExpirationBasedDiscounts(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.calculateExpirationBasedDiscounts();
+    }
+
+    @Benchmark
+    public WarehouseAnalyzer.InventoryValidation validateInventoryConstraints(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.validateInventoryConstraints();
+    }
+
+    @Benchmark
+    public WarehouseAnalyzer.InventoryStatistics getInventoryStatistics(WarehouseState state, AnalyzerState s) {
+        return s.analyzer.getInventoryStatistics();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.benchmarks;
+
+import com.example.Category;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Category#of(String)} for names that are already interned, as seen on every row of an import.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CategoryBenchmark {
+
+    @Param({"canonical", "lowercase", "padded"})
+    public String spelling;
+
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        names = new String[64];
+        for (int i = 0; i < names.length; i++) {
+            String canonical = "Category" + i;
+            names[i] = switch (spelling) {
+                case "lowercase" -> canonical.toLowerCase();
+                case "padded" -> "  " + canonical + " ";
+                default -> canonical;
+            };
+            Category.of(names[i]);
+        }
+    }
+
+    @Benchmark
+    public Category of() {
+        String name = names[next];
+        next = (next + 1) & (names.length - 1);
+        return Category.of(name);
+    }
+}
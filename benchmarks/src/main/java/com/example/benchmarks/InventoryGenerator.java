@@ -0,0 +1,114 @@
+package com.example.benchmarks;
+
+import com.example.Category;
+import com.example.ElectronicsProduct;
+import com.example.FoodProduct;
+import com.example.Product;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Generates reproducible synthetic inventories from an {@link InventorySpec}.
+ */
+public final class InventoryGenerator {
+
+    private static final String[] FOOD_NAMES = {
+            "Milk", "Cheese", "Yoghurt", "Bread", "Butter", "Apples", "Bananas", "Coffee", "Pasta", "Rice"
+    };
+    private static final String[] FOOD_SIZES = {"250g", "500g", "1kg", "1L", "1.5L", "2L"};
+    private static final String[] ELECTRONICS_NAMES = {
+            "Laptop", "Phone", "Tablet", "Monitor", "Headphones", "Speaker", "Camera", "Router", "Keyboard", "Television"
+    };
+    private static final String[] ELECTRONICS_MODELS = {"Mini", "Pro", "Max", "Lite", "S", "X"};
+
+    private final InventorySpec spec;
+    private final Category[] categories;
+    private final double[] cumulative;
+    private final LocalDate today;
+
+    public InventoryGenerator(InventorySpec spec) {
+        this(spec, LocalDate.now());
+    }
+
+    public InventoryGenerator(InventorySpec spec, LocalDate today) {
+        this.spec = spec;
+        this.today = today;
+        this.categories = new Category[spec.categoryCount()];
+        this.cumulative = new double[spec.categoryCount()];
+
+        double total = 0;
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = Category.of("Category" + i);
+            total += 1.0 / Math.pow(i + 1, spec.categorySkew());
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    public List<Product> generate() {
+        SplittableRandom random = new SplittableRandom(spec.seed());
+        List<Product> result = new ArrayList<>(spec.size());
+        for (int i = 0; i < spec.size(); i++) {
+            result.add(next(random));
+        }
+        return result;
+    }
+
+    /**
+     * Produces a single product; benchmarks use this to create fresh items for insert workloads.
+     */
+    public Product next(SplittableRandom random) {
+        UUID id = new UUID(random.nextLong(), random.nextLong());
+        Category category = pickCategory(random);
+        BigDecimal price = randomPrice(random);
+
+        if (random.nextDouble() < spec.foodShare()) {
+            String name = pick(random, FOOD_NAMES) + " " + pick(random, FOOD_SIZES);
+            BigDecimal weight = BigDecimal.valueOf(random.nextInt(50, 3000), 3);
+            return new FoodProduct(id, name, category, price, randomExpiry(random), weight);
+        }
+        String name = pick(random, ELECTRONICS_NAMES) + " " + pick(random, ELECTRONICS_MODELS);
+        BigDecimal weight = BigDecimal.valueOf(random.nextInt(100, 15000), 3);
+        return new ElectronicsProduct(id, name, category, price, random.nextInt(0, 37), weight);
+    }
+
+    public Category[] categories() {
+        return categories.clone();
+    }
+
+    private Category pickCategory(SplittableRandom random) {
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = cumulative.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] < u) lo = mid + 1;
+            else hi = mid;
+        }
+        return categories[lo];
+    }
+
+    private LocalDate randomExpiry(SplittableRandom random) {
+        if (random.nextDouble() < spec.expiredShare()) {
+            return today.minusDays(random.nextInt(1, 31));
+        }
+        return today.plusDays(random.nextInt(0, spec.expiryHorizonDays() + 1));
+    }
+
+    // Log-uniform between 1 and 20 000 so both cheap groceries and >= 1000 "high value" items show up.
+    private static BigDecimal randomPrice(SplittableRandom random) {
+        double value = Math.exp(random.nextDouble(0, Math.log(20_000)));
+        return BigDecimal.valueOf(Math.round(value * 100), 2);
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
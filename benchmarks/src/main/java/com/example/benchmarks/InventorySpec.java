@@ -0,0 +1,47 @@
+package com.example.benchmarks;
+
+/**
+ * Shape of a synthetic inventory.
+ *
+ * @param size             number of products
+ * @param categoryCount    number of distinct categories
+ * @param categorySkew     Zipf exponent for category popularity (0 = uniform)
+ * @param foodShare        fraction of products that are {@code FoodProduct}s, the rest are electronics
+ * @param expiredShare     fraction of food products that are already expired
+ * @param expiryHorizonDays fresh food expires uniformly within this many days from today
+ * @param seed             random seed, so runs are reproducible
+ */
+public record InventorySpec(
+        int size,
+        int categoryCount,
+        double categorySkew,
+        double foodShare,
+        double expiredShare,
+        int expiryHorizonDays,
+        long seed
+) {
+    public InventorySpec {
+        if (size < 0) throw new IllegalArgumentException("Size cannot be negative.");
+        if (categoryCount <= 0) throw new IllegalArgumentException("Category count must be positive.");
+        if (categorySkew < 0) throw new IllegalArgumentException("Category skew cannot be negative.");
+        if (foodShare < 0 || foodShare > 1) throw new IllegalArgumentException("Food share must be within [0, 1].");
+        if (expiredShare < 0 || expiredShare > 1) throw new IllegalArgumentException("Expired share must be within [0, 1].");
+        if (expiryHorizonDays < 0) throw new IllegalArgumentException("Expiry horizon cannot be negative.");
+    }
+
+    public static InventorySpec of(int size) {
+        return new InventorySpec(size, 20, 1.0, 0.6, 0.1, 30, 42L);
+    }
+
+    public InventorySpec withCategorySkew(double skew) {
+        return new InventorySpec(size, categoryCount, skew, foodShare, expiredShare, expiryHorizonDays, seed);
+    }
+
+    public InventorySpec withFoodShare(double share) {
+        return new InventorySpec(size, categoryCount, categorySkew, share, expiredShare, expiryHorizonDays, seed);
+    }
+
+    public InventorySpec withExpiredShare(double share) {
+        return new InventorySpec(size, categoryCount, categorySkew, foodShare, share, expiryHorizonDays, seed);
+    }
+}
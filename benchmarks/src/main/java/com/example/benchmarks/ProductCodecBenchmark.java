@@ -0,0 +1,70 @@
+package com.example.benchmarks;
+
+import com.example.Product;
+import com.example.ProductCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductCodec}: encoding and decoding whole batches, and reading every price through a
+ * {@link ProductCodec.View} without decoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductCodecBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private List<Product> products;
+    private ByteBuffer encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        products = new InventoryGenerator(InventorySpec.of(size)).generate();
+        encoded = ProductCodec.encodeAll(products);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeAll() {
+        return ProductCodec.encodeAll(products);
+    }
+
+    @Benchmark
+    public List<Product> decodeAll() {
+        return ProductCodec.decodeAll(encoded.duplicate());
+    }
+
+    @Benchmark
+    public long readPricesInPlace() {
+        ByteBuffer buffer = encoded.duplicate();
+        ProductCodec codec = ProductCodec.readDictionary(buffer);
+        int offset = buffer.position() + 4;
+        ProductCodec.View view = codec.view();
+        long sum = 0;
+        while (offset < buffer.limit()) {
+            view.wrap(buffer, offset);
+            sum += view.unscaledPrice();
+            offset += view.size();
+        }
+        return sum;
+    }
+}
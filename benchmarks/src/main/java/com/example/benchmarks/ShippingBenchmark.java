@@ -0,0 +1,67 @@
+package com.example.benchmarks;
+
+import com.example.Product;
+import com.example.Warehouse;
+import com.example.WarehouseAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WarehouseAnalyzer#optimizeShippingGroups(BigDecimal)}; packing is quadratic, so sizes stay smaller.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShippingBenchmark {
+
+    @Param({"500", "5000"})
+    public int size;
+
+    @Param({"0.6"})
+    public double foodShare;
+
+    @Param({"20"})
+    public String maxWeightPerGroup;
+
+    private WarehouseAnalyzer analyzer;
+    private BigDecimal maxWeight;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Warehouse warehouse = Warehouse.getInstance("BenchmarkWarehouse");
+        warehouse.clearProducts();
+        for (Product product : new InventoryGenerator(InventorySpec.of(size).withFoodShare(foodShare)).generate()) {
+            warehouse.addProduct(product);
+        }
+        analyzer = new WarehouseAnalyzer(warehouse);
+        maxWeight = new BigDecimal(maxWeightPerGroup);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Warehouse.getInstance().clearProducts();
+    }
+
+    @Benchmark
+    public List<WarehouseAnalyzer.ShippingGroup> optimizeShippingGroups() {
+        return analyzer.optimizeShippingGroups(maxWeight);
+    }
+}
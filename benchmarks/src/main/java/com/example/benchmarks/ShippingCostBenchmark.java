@@ -0,0 +1,71 @@
+package com.example.benchmarks;
+
+import com.example.Product;
+import com.example.Shippable;
+import com.example.ShippingCosts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ShippingCosts#totals} against summing {@code weight()} and {@code calculateShippingCost()}
+ * item by item with streams.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShippingCostBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"0.6"})
+    public double foodShare;
+
+    private List<Shippable> items;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        items = new ArrayList<>();
+        for (Product product : new InventoryGenerator(InventorySpec.of(size).withFoodShare(foodShare)).generate()) {
+            if (product instanceof Shippable shippable) {
+                items.add(shippable);
+            }
+        }
+    }
+
+    @Benchmark
+    public ShippingCosts.Totals batch() {
+        return ShippingCosts.totals(items);
+    }
+
+    @Benchmark
+    public ShippingCosts.Totals perItem() {
+        BigDecimal totalWeight = items.stream()
+                .map(Shippable::weight)
+                .filter(Objects::nonNull)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal totalCost = items.stream()
+                .map(Shippable::calculateShippingCost)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return new ShippingCosts.Totals(totalWeight, totalCost);
+    }
+}
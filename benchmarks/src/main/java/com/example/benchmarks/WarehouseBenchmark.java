@@ -0,0 +1,93 @@
+package com.example.benchmarks;
+
+import com.example.Category;
+import com.example.Perishable;
+import com.example.Product;
+import com.example.Shippable;
+import com.example.Warehouse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CRUD and listing operations on {@link Warehouse}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WarehouseBenchmark {
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp() {
+            random = new SplittableRandom(7L);
+        }
+
+        Product existing(WarehouseState state) {
+            return state.products.get(random.nextInt(state.products.size()));
+        }
+    }
+
+    @Benchmark
+    public Optional<Product> getProductById(WarehouseState state, Cursor cursor) {
+        return state.warehouse.getProductById(cursor.existing(state).uuid());
+    }
+
+    @Benchmark
+    public Product addThenRemove(WarehouseState state, Cursor cursor) {
+        Product product = state.generator.next(cursor.random);
+        state.warehouse.addProduct(product);
+        state.warehouse.remove(product.uuid());
+        return product;
+    }
+
+    @Benchmark
+    public Product updateProductPrice(WarehouseState state, Cursor cursor) {
+        Product product = cursor.existing(state);
+        state.warehouse.updateProductPrice(product.uuid(), BigDecimal.valueOf(cursor.random.nextInt(1, 100_000), 2));
+        return product;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Product> getProducts(WarehouseState state) {
+        return Warehouse.getProducts();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<Category, List<Product>> getProductsGroupedByCategories(WarehouseState state) {
+        return state.warehouse.getProductsGroupedByCategories();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Perishable> expiredProducts(WarehouseState state) {
+        return state.warehouse.expiredProducts();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Shippable> shippableProducts(WarehouseState state) {
+        return Warehouse.shippableProducts();
+    }
+}
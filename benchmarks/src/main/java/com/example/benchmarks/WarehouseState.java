@@ -0,0 +1,56 @@
+package com.example.benchmarks;
+
+import com.example.Product;
+import com.example.Warehouse;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+
+/**
+ * Shared benchmark state: the singleton {@link Warehouse} filled with a synthetic inventory.
+ */
+@State(Scope.Benchmark)
+public class WarehouseState {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"0.0", "1.2"})
+    public double categorySkew;
+
+    @Param({"0.6"})
+    public double foodShare;
+
+    @Param({"0.1"})
+    public double expiredShare;
+
+    public Warehouse warehouse;
+    public InventoryGenerator generator;
+    public List<Product> products;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        InventorySpec spec = InventorySpec.of(size)
+                .withCategorySkew(categorySkew)
+                .withFoodShare(foodShare)
+                .withExpiredShare(expiredShare);
+        generator = new InventoryGenerator(spec);
+        products = generator.generate();
+
+        warehouse = Warehouse.getInstance("BenchmarkWarehouse");
+        warehouse.clearProducts();
+        for (Product product : products) {
+            warehouse.addProduct(product);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        warehouse.clearProducts();
+    }
+}
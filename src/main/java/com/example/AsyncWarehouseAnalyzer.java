@@ -0,0 +1,167 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous front for {@link WarehouseAnalyzer}.
+ * <p>
+ * Every query runs on its own virtual thread against a snapshot of the warehouse taken when the
+ * query starts. Identical queries that arrive while one is still running share its result instead
+ * of computing it again.
+ */
+public class AsyncWarehouseAnalyzer implements AutoCloseable {
+
+    private final WarehouseAnalyzer analyzer;
+    private final ExecutorService executor;
+    private final Map<QueryKey, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    public AsyncWarehouseAnalyzer(Warehouse warehouse) {
+        this(new WarehouseAnalyzer(warehouse));
+    }
+
+    public AsyncWarehouseAnalyzer(WarehouseAnalyzer analyzer) {
+        this.analyzer = Objects.requireNonNull(analyzer, "Analyzer cannot be null.");
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    // === Search and Filter Methods ===
+
+    public CompletableFuture<List<Product>> findProductsInCategory(Category category) {
+        if (category == null) {
+            throw new IllegalArgumentException("Category cannot be null.");
+        }
+        return submit(new QueryKey("findProductsInCategory", List.of(category)),
+                a -> a.findProductsInCategory(category));
+    }
+
+    public CompletableFuture<List<Product>> findProductsInPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        return submit(new QueryKey("findProductsInPriceRange", List.of(minPrice, maxPrice)),
+                a -> a.findProductsInPriceRange(minPrice, maxPrice));
+    }
+
+    public CompletableFuture<List<Perishable>> findProductsExpiringWithinDays(int days) {
+        return submit(new QueryKey("findProductsExpiringWithinDays", List.of(days)),
+                a -> a.findProductsExpiringWithinDays(days));
+    }
+
+    public CompletableFuture<List<Product>> searchProductsByName(String searchTerm) {
+        return submit(new QueryKey("searchProductsByName", List.of(searchTerm)),
+                a -> a.searchProductsByName(searchTerm));
+    }
+
+    public CompletableFuture<List<Product>> findProductsAbovePrice(BigDecimal price) {
+        return submit(new QueryKey("findProductsAbovePrice", List.of(price)),
+                a -> a.findProductsAbovePrice(price));
+    }
+
+    // === Analytics Methods ===
+
+    public CompletableFuture<Map<Category, BigDecimal>> calculateWeightedAveragePriceByCategory() {
+        return submit(new QueryKey("calculateWeightedAveragePriceByCategory", List.of()),
+                WarehouseAnalyzer::calculateWeightedAveragePriceByCategory);
+    }
+
+    public CompletableFuture<Map<Product, BigDecimal>> calculateExpirationBasedDiscounts() {
+        return submit(new QueryKey("calculateExpirationBasedDiscounts", List.of()),
+                WarehouseAnalyzer::calculateExpirationBasedDiscounts);
+    }
+
+    public CompletableFuture<WarehouseAnalyzer.InventoryValidation> validateInventoryConstraints() {
+        return submit(new QueryKey("validateInventoryConstraints", List.of()),
+                WarehouseAnalyzer::validateInventoryConstraints);
+    }
+
+    public CompletableFuture<WarehouseAnalyzer.InventoryStatistics> getInventoryStatistics() {
+        return submit(new QueryKey("getInventoryStatistics", List.of()),
+                WarehouseAnalyzer::getInventoryStatistics);
+    }
+
+    public CompletableFuture<List<WarehouseAnalyzer.ShippingGroup>> optimizeShippingGroups(BigDecimal maxWeightPerGroup) {
+        if (maxWeightPerGroup == null || maxWeightPerGroup.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Max weight per group must be positive.");
+        }
+        return submit(new QueryKey("optimizeShippingGroups", List.of(maxWeightPerGroup)),
+                a -> a.optimizeShippingGroups(maxWeightPerGroup));
+    }
+
+    /**
+     * Runs the analytics queries concurrently over one shared snapshot, so all parts of the report
+     * describe the same inventory.
+     */
+    public CompletableFuture<InventoryReport> generateReport(BigDecimal maxWeightPerGroup) {
+        if (maxWeightPerGroup == null || maxWeightPerGroup.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Max weight per group must be positive.");
+        }
+        return coalesce(new QueryKey("generateReport", List.of(maxWeightPerGroup)), () -> {
+            WarehouseAnalyzer pinned = analyzer.snapshot();
+            var statistics = CompletableFuture.supplyAsync(pinned::getInventoryStatistics, executor);
+            var validation = CompletableFuture.supplyAsync(pinned::validateInventoryConstraints, executor);
+            var averages = CompletableFuture.supplyAsync(pinned::calculateWeightedAveragePriceByCategory, executor);
+            var shipping = CompletableFuture.supplyAsync(() -> pinned.optimizeShippingGroups(maxWeightPerGroup), executor);
+            return CompletableFuture.allOf(statistics, validation, averages, shipping)
+                    .thenApply(ignored -> new InventoryReport(
+                            statistics.join(),
+                            validation.join(),
+                            averages.join(),
+                            shipping.join()));
+        });
+    }
+
+    /**
+     * Stops accepting new queries; queries already running are allowed to finish.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private <T> CompletableFuture<T> submit(QueryKey key, Function<WarehouseAnalyzer, T> query) {
+        return coalesce(key, () -> CompletableFuture.supplyAsync(() -> query.apply(analyzer.snapshot()), executor));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> coalesce(QueryKey key, Supplier<CompletableFuture<T>> start) {
+        CompletableFuture<T> shared = new CompletableFuture<>();
+        CompletableFuture<?> existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            return ((CompletableFuture<T>) existing).copy();
+        }
+
+        CompletableFuture<T> started;
+        try {
+            started = start.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, shared);
+            shared.completeExceptionally(e);
+            throw e;
+        }
+        started.whenComplete((result, failure) -> {
+            // Unregister first so that requests arriving after completion start a fresh computation.
+            inFlight.remove(key, shared);
+            if (failure != null) {
+                shared.completeExceptionally(failure);
+            } else {
+                shared.complete(result);
+            }
+        });
+        return shared.copy();
+    }
+
+    private record QueryKey(String query, List<Object> arguments) { }
+
+    public record InventoryReport(
+            WarehouseAnalyzer.InventoryStatistics statistics,
+            WarehouseAnalyzer.InventoryValidation validation,
+            Map<Category, BigDecimal> weightedAveragePriceByCategory,
+            List<WarehouseAnalyzer.ShippingGroup> shippingGroups
+    ) { }
+}
@@ -6,17 +6,32 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 public class Category {
 
 /// /
     private static final Map<String, Category> CACHE = new ConcurrentHashMap<>();
+    // Exact spellings seen by of(), so repeated lookups skip trimming and case conversion.
+    private static final Map<String, Category> SPELLINGS = new ConcurrentHashMap<>();
+    private static final int MAX_SPELLINGS = 4096;
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+    // Categories by id, in chunks that never move once created, so registering needs no lock.
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final AtomicReferenceArray<AtomicReferenceArray<Category>> CHUNKS = new AtomicReferenceArray<>(1 << 12);
+    // Length of the prefix of ids whose categories are all registered.
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
     private final String name;
+    private final int id;
 
 
     private Category(String name) {
         this.name = name;
+        this.id = NEXT_ID.getAndIncrement();
     }
 
 
@@ -25,7 +40,37 @@ public class Category {
             throw new IllegalArgumentException("Category name can't be null");
         }
 
+        Category known = SPELLINGS.get(name);
+        if (known != null) {
+            return known;
+        }
+
+        Category category = intern(name);
+        if (SPELLINGS.size() < MAX_SPELLINGS) {
+            SPELLINGS.putIfAbsent(name, category);
+        }
+        return category;
+    }
+
+    /**
+     * Returns the category with the given id, as assigned when it was first created.
+     */
+    public static Category byId(int id) {
+        if (id < 0 || id >= COUNT.get()) {
+            throw new IllegalArgumentException("Unknown category id: " + id);
+        }
+        return CHUNKS.get(id >>> CHUNK_BITS).get(id & (CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Number of categories created so far; ids are always in {@code [0, count())}.
+     */
+    public static int count() {
+        return COUNT.get();
+    }
 
+
+    private static Category intern(String name) {
         name = name.trim();
         if (name.isEmpty()) {
             throw new IllegalArgumentException("Category name can't be blank");
@@ -35,7 +80,30 @@ public class Category {
         String formattedName = capitalize(name);
 
 
-        return CACHE.computeIfAbsent(formattedName, Category::new);
+        return CACHE.computeIfAbsent(formattedName, n -> register(new Category(n)));
+    }
+
+
+    private static Category register(Category category) {
+        int chunk = category.id >>> CHUNK_BITS;
+        if (chunk >= CHUNKS.length()) {
+            throw new IllegalStateException("Too many categories.");
+        }
+        if (CHUNKS.get(chunk) == null) {
+            CHUNKS.compareAndSet(chunk, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+        }
+        CHUNKS.get(chunk).set(category.id & (CHUNK_SIZE - 1), category);
+
+        // Ids may be registered out of order; only expose a prefix without gaps. Whoever fills the
+        // gap, or registers after it is filled, moves the count past every registered id.
+        for (int published = COUNT.get(); published < NEXT_ID.get(); published = COUNT.get()) {
+            AtomicReferenceArray<Category> slots = CHUNKS.get(published >>> CHUNK_BITS);
+            if (slots == null || slots.get(published & (CHUNK_SIZE - 1)) == null) {
+                break;
+            }
+            COUNT.compareAndSet(published, published + 1);
+        }
+        return category;
     }
 
 
@@ -48,6 +116,13 @@ public class Category {
         return name;
     }
 
+    /**
+     * Dense, zero-based id of this category, usable as an array or bit index.
+     */
+    public int getId() {
+        return id;
+    }
+
 
     //
     public List<Product> findProductsByCategory(Category category) {
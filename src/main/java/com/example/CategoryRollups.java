@@ -0,0 +1,54 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CategoryTotals} for every category of the live products of the warehouse, updated from
+ * {@link ProductVersionStore} on every commit, so a category's weighted average price is one
+ * division instead of a pass over the inventory.
+ */
+final class CategoryRollups implements ProductVersionStore.ChangeHandler {
+
+    private CategoryTotals[] byCategory = new CategoryTotals[0];
+
+    @Override
+    public synchronized void onChange(Product before, Product after) {
+        if (before != null) {
+            int id = before.getCategory().getId();
+            CategoryTotals totals = byCategory[id];
+            totals.remove(before);
+            if (totals.count() == 0) {
+                byCategory[id] = null;
+            }
+        }
+        if (after != null) {
+            int id = after.getCategory().getId();
+            byCategory = CategoryTotals.ensureCapacity(byCategory, id);
+            if (byCategory[id] == null) {
+                byCategory[id] = new CategoryTotals(after.getCategory());
+            }
+            byCategory[id].add(after);
+        }
+    }
+
+    /**
+     * Weighted average price of the category, or {@code null} when it has no products.
+     */
+    synchronized BigDecimal weightedAveragePrice(Category category) {
+        int id = category.getId();
+        CategoryTotals totals = id < byCategory.length ? byCategory[id] : null;
+        return totals == null ? null : totals.weightedAveragePrice();
+    }
+
+    synchronized Map<Category, BigDecimal> weightedAveragePrices() {
+        Map<Category, BigDecimal> result = new HashMap<>();
+        for (CategoryTotals totals : byCategory) {
+            if (totals != null) {
+                result.put(totals.category(), totals.weightedAveragePrice());
+            }
+        }
+        return result;
+    }
+}
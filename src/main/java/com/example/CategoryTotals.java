@@ -0,0 +1,82 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Running price and weight sums for the products of one category, either summed in one pass or
+ * kept up to date on every change (see {@link CategoryRollups}).
+ */
+final class CategoryTotals {
+
+    private final Category category;
+    private BigDecimal weightedPriceSum = BigDecimal.ZERO;
+    private BigDecimal weightSum = BigDecimal.ZERO;
+    private BigDecimal priceSum = BigDecimal.ZERO;
+    private int count;
+
+    CategoryTotals(Category category) {
+        this.category = category;
+    }
+
+    /**
+     * Returns {@code totals} with room for {@code id}, growing it to the current category count.
+     */
+    static CategoryTotals[] ensureCapacity(CategoryTotals[] totals, int id) {
+        if (id < totals.length) {
+            return totals;
+        }
+        return Arrays.copyOf(totals, Math.max(id + 1, Category.count()));
+    }
+
+    void add(Product product) {
+        priceSum = priceSum.add(product.price());
+        count++;
+        BigDecimal weight = shippingWeight(product);
+        if (weight.compareTo(BigDecimal.ZERO) > 0) {
+            weightedPriceSum = weightedPriceSum.add(product.price().multiply(weight));
+            weightSum = weightSum.add(weight);
+        }
+    }
+
+    /**
+     * Takes back what {@link #add} added for {@code product}. The sums are exact, so adding and
+     * removing leaves them equal in value to summing the remaining products again.
+     */
+    void remove(Product product) {
+        priceSum = priceSum.subtract(product.price());
+        count--;
+        BigDecimal weight = shippingWeight(product);
+        if (weight.compareTo(BigDecimal.ZERO) > 0) {
+            weightedPriceSum = weightedPriceSum.subtract(product.price().multiply(weight));
+            weightSum = weightSum.subtract(weight);
+        }
+    }
+
+    Category category() {
+        return category;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Price weighted by shipping weight, or the plain average when nothing in the category has a
+     * positive weight; rounded to two decimals.
+     */
+    BigDecimal weightedAveragePrice() {
+        if (weightSum.compareTo(BigDecimal.ZERO) > 0) {
+            return weightedPriceSum.divide(weightSum, 2, RoundingMode.HALF_UP);
+        }
+        return priceSum.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal shippingWeight(Product product) {
+        if (product instanceof Shippable s && s.weight() != null) {
+            return s.weight();
+        }
+        return BigDecimal.ZERO;
+    }
+}
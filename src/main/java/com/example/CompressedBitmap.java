@@ -0,0 +1,295 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints in the style of Roaring bitmaps.
+ * <p>
+ * Values are split by their high 16 bits into containers. A container stores its low 16 bits as a
+ * sorted {@code char[]} while it holds at most {@value #ARRAY_MAX} values and as a 65536-bit
+ * {@code long[]} once it is denser, so both sparse and dense sets stay small and intersections
+ * work word by word where it matters. Not thread-safe.
+ */
+final class CompressedBitmap {
+
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+    private int cardinality;
+
+    boolean add(int value) {
+        checkValue(value);
+        char key = (char) (value >>> 16);
+        int i = indexOf(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key, new Container());
+        }
+        if (containers[i].add((char) value)) {
+            cardinality++;
+            return true;
+        }
+        return false;
+    }
+
+    boolean remove(int value) {
+        checkValue(value);
+        int i = indexOf((char) (value >>> 16));
+        if (i < 0 || !containers[i].remove((char) value)) {
+            return false;
+        }
+        cardinality--;
+        if (containers[i].cardinality == 0) {
+            removeContainer(i);
+        }
+        return true;
+    }
+
+    boolean contains(int value) {
+        if (value < 0) return false;
+        int i = indexOf((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    void clear() {
+        keys = new char[4];
+        containers = new Container[4];
+        containerCount = 0;
+        cardinality = 0;
+    }
+
+    /**
+     * Number of values present in both bitmaps, computed without building the intersection.
+     */
+    int andCardinality(CompressedBitmap other) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < containerCount && j < other.containerCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                count += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < containerCount && j < other.containerCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = containers[i].and(other.containers[j]);
+                if (c.cardinality > 0) {
+                    result.insertContainer(result.containerCount, keys[i], c);
+                    result.cardinality += c.cardinality;
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calls {@code action} for every value in ascending order.
+     */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < containerCount; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    private void insertContainer(int at, char key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, containerCount - at);
+        System.arraycopy(containers, at, containers, at + 1, containerCount - at);
+        keys[at] = key;
+        containers[at] = container;
+        containerCount++;
+    }
+
+    private void removeContainer(int at) {
+        System.arraycopy(keys, at + 1, keys, at, containerCount - at - 1);
+        System.arraycopy(containers, at + 1, containers, at, containerCount - at - 1);
+        containers[--containerCount] = null;
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Bitmap values cannot be negative.");
+        }
+    }
+
+    /**
+     * Holds the values sharing one high 16-bit key, as a sorted array or as a bitmap.
+     */
+    private static final class Container {
+        private char[] values = new char[4]; // used while words == null
+        private long[] words;
+        private int cardinality;
+
+        boolean add(char v) {
+            if (words != null) {
+                long bit = 1L << v;
+                long before = words[v >>> 6];
+                words[v >>> 6] = before | bit;
+                if ((before & bit) != 0) return false;
+                cardinality++;
+                return true;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, v);
+            if (i >= 0) return false;
+            if (cardinality == ARRAY_MAX) {
+                toBitmap();
+                return add(v);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = v;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char v) {
+            if (words != null) {
+                long bit = 1L << v;
+                long before = words[v >>> 6];
+                if ((before & bit) == 0) return false;
+                words[v >>> 6] = before & ~bit;
+                cardinality--;
+                if (cardinality <= ARRAY_MAX / 2) {
+                    toArray();
+                }
+                return true;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, v);
+            if (i < 0) return false;
+            System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+            cardinality--;
+            return true;
+        }
+
+        boolean contains(char v) {
+            if (words != null) {
+                return (words[v >>> 6] & (1L << v)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, v) >= 0;
+        }
+
+        int andCardinality(Container other) {
+            if (words != null && other.words != null) {
+                int count = 0;
+                for (int k = 0; k < WORDS; k++) {
+                    count += Long.bitCount(words[k] & other.words[k]);
+                }
+                return count;
+            }
+            Container small = words == null ? this : other;
+            Container large = small == this ? other : this;
+            int count = 0;
+            for (int k = 0; k < small.cardinality; k++) {
+                if (large.contains(small.values[k])) count++;
+            }
+            return count;
+        }
+
+        Container and(Container other) {
+            Container result = new Container();
+            if (words != null && other.words != null) {
+                result.words = new long[WORDS];
+                for (int k = 0; k < WORDS; k++) {
+                    long w = words[k] & other.words[k];
+                    result.words[k] = w;
+                    result.cardinality += Long.bitCount(w);
+                }
+                if (result.cardinality <= ARRAY_MAX) {
+                    result.toArray();
+                }
+                return result;
+            }
+            Container small = words == null ? this : other;
+            Container large = small == this ? other : this;
+            result.values = new char[Math.max(4, small.cardinality)];
+            for (int k = 0; k < small.cardinality; k++) {
+                char v = small.values[k];
+                if (large.contains(v)) {
+                    result.values[result.cardinality++] = v;
+                }
+            }
+            return result;
+        }
+
+        void forEach(int high, IntConsumer action) {
+            if (words == null) {
+                for (int k = 0; k < cardinality; k++) {
+                    action.accept(high | values[k]);
+                }
+                return;
+            }
+            for (int k = 0; k < WORDS; k++) {
+                long w = words[k];
+                while (w != 0) {
+                    action.accept(high | (k << 6) | Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+        }
+
+        private void toBitmap() {
+            long[] bits = new long[WORDS];
+            for (int k = 0; k < cardinality; k++) {
+                char v = values[k];
+                bits[v >>> 6] |= 1L << v;
+            }
+            words = bits;
+            values = null;
+        }
+
+        private void toArray() {
+            char[] array = new char[Math.max(4, cardinality)];
+            int n = 0;
+            for (int k = 0; k < WORDS; k++) {
+                long w = words[k];
+                while (w != 0) {
+                    array[n++] = (char) ((k << 6) | Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+            values = array;
+            words = null;
+        }
+    }
+}
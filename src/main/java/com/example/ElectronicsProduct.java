@@ -7,6 +7,10 @@ import java.util.UUID;
 /// ////
 public class ElectronicsProduct extends Product implements Shippable {
 
+    /** Shipping cost of every item, and the surcharge above {@link ProductAttribute#HEAVY_THRESHOLD}. */
+    static final BigDecimal SHIPPING_BASE = BigDecimal.valueOf(79);
+    static final BigDecimal HEAVY_SURCHARGE = BigDecimal.valueOf(49);
+
     private final int warrantyMonths;
     private final BigDecimal weight;
 
@@ -27,9 +31,22 @@ public class ElectronicsProduct extends Product implements Shippable {
         this.warrantyMonths = warrantyMonths;
         this.weight = weight;
     }
+
+    /**
+     * Copies {@code source} with a new price, for {@link #withPrice} in this class and subclasses.
+     */
+    protected ElectronicsProduct(ElectronicsProduct source, BigDecimal price) {
+        super(source, price);
+        this.warrantyMonths = source.warrantyMonths;
+        this.weight = source.weight;
+    }
 ///  ///
 
 
+    public int getWarrantyMonths() {
+        return warrantyMonths;
+    }
+
     @Override
     public BigDecimal weight() {
         return weight;
@@ -38,12 +55,17 @@ public class ElectronicsProduct extends Product implements Shippable {
     @Override
     public BigDecimal calculateShippingCost() {
         // Shipping rule: base 79 + (if heavy > 5kg, add 49)
-        BigDecimal cost = BigDecimal.valueOf(79);
-        if (weight.compareTo(BigDecimal.valueOf(5)) > 0) {
-            cost = cost.add(BigDecimal.valueOf(49));
+        BigDecimal cost = SHIPPING_BASE;
+        if (weight.compareTo(ProductAttribute.HEAVY_THRESHOLD) > 0) {
+            cost = cost.add(HEAVY_SURCHARGE);
         }
         return cost;
     }
+    @Override
+    protected ElectronicsProduct withPrice(BigDecimal newPrice) {
+        return new ElectronicsProduct(this, newPrice);
+    }
+
     @Override
     public String productDetails() {
         return "Electronics: " + name() + ", Warranty: " + warrantyMonths + " months";
@@ -0,0 +1,291 @@
+package com.example;
+
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Takes expired perishables out of the {@link Warehouse} a few at a time.
+ * <p>
+ * A perishable is expired from the start of the day after its expiration date and becomes due for
+ * eviction once its grace period has passed after that. Due times are kept in a queue updated
+ * from the warehouse's changes, so a sweep only looks at products that are actually due. Each sweep
+ * removes at most {@code batchSize} of them, one commit each, so writers are never held up for
+ * long; {@link #start()} sweeps every {@code interval} in the background. Evicted products are
+ * handed to the archive first, if there is one. The archive runs outside the warehouse lock, and a
+ * product changed before it is removed is left for the sweep that finds its new version. Time
+ * comes from the given {@link Clock}.
+ */
+public class ExpirySweeper implements AutoCloseable {
+
+    private final Warehouse warehouse;
+    private final Settings settings;
+    private final Consumer<? super Product> archive;
+    private final Clock clock;
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong failedSweeps = new AtomicLong();
+    private final WarehouseListener listener = new WarehouseListener() {
+        @Override
+        public void productAdded(Product product) {
+            schedule(product);
+        }
+
+        @Override
+        public void productRemoved(Product product) {
+            unschedule(product.uuid());
+        }
+
+        @Override
+        public void productUpdated(Product before, Product after) {
+            unschedule(before.uuid());
+            schedule(after);
+        }
+    };
+
+    // Guarded by this.
+    private final NavigableSet<Due> queue = new TreeSet<>();
+    private final Map<UUID, Due> dueById = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+    private boolean closed;
+
+    /**
+     * Evicts expired perishables as soon as they expire, discarding them.
+     */
+    public ExpirySweeper(Warehouse warehouse) {
+        this(warehouse, Settings.DEFAULT, null, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param archive receives every product before it is removed; {@code null} to discard them
+     */
+    public ExpirySweeper(Warehouse warehouse, Settings settings, Consumer<? super Product> archive, Clock clock) {
+        this.warehouse = Objects.requireNonNull(warehouse, "Warehouse cannot be null.");
+        this.settings = Objects.requireNonNull(settings, "Settings cannot be null.");
+        this.archive = archive;
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null.");
+
+        // Changes committed after subscribing wait for this lock, so none are missed.
+        synchronized (this) {
+            warehouse.addListener(listener);
+            for (Product product : Warehouse.getProducts()) {
+                schedule(product);
+            }
+        }
+    }
+
+    /**
+     * Starts sweeping every {@code interval} on a background thread.
+     */
+    public synchronized ExpirySweeper start() {
+        if (closed) {
+            throw new IllegalStateException("Sweeper is closed.");
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "expiry-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = settings.interval().toMillis();
+            scheduler.scheduleWithFixedDelay(this::sweepQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Evicts up to {@code batchSize} products that are due now; returns how many were evicted.
+     * Products that were changed or removed meanwhile are skipped, even after the archive took them.
+     */
+    public int runOnce() {
+        long now = clock.millis();
+        List<Due> batch = new ArrayList<>(settings.batchSize());
+        synchronized (this) {
+            while (batch.size() < settings.batchSize() && !queue.isEmpty() && queue.first().atMillis() <= now) {
+                Due due = queue.pollFirst();
+                dueById.remove(due.id());
+                batch.add(due);
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Due due = batch.get(i);
+            Product product = warehouse.getProductById(due.id()).orElse(null);
+            if (product == null || dueMillis(product) != due.atMillis()) {
+                continue;
+            }
+            try {
+                if (archive != null) {
+                    archive.accept(product);
+                }
+            } catch (RuntimeException e) {
+                // Leave this product and the rest of the batch for the next sweep.
+                requeue(batch.subList(i, batch.size()));
+                throw e;
+            }
+            boolean[] removed = new boolean[1];
+            Warehouse.exclusive(() -> {
+                // Only the version that was checked and archived; a newer one is rescheduled.
+                if (warehouse.getProductById(due.id()).orElse(null) == product) {
+                    warehouse.remove(due.id());
+                    removed[0] = true;
+                }
+            });
+            if (removed[0]) {
+                evicted.incrementAndGet();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of perishables waiting to become due or to be swept.
+     */
+    public synchronized int pending() {
+        return queue.size();
+    }
+
+    public long evictedCount() {
+        return evicted.get();
+    }
+
+    /**
+     * Background sweeps that stopped early because the archive failed.
+     */
+    public long failedSweeps() {
+        return failedSweeps.get();
+    }
+
+    @Override
+    public void close() {
+        warehouse.removeListener(listener);
+        ScheduledExecutorService current;
+        synchronized (this) {
+            closed = true;
+            current = scheduler;
+            scheduler = null;
+            queue.clear();
+            dueById.clear();
+        }
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            runOnce();
+        } catch (RuntimeException e) {
+            failedSweeps.incrementAndGet();
+        }
+    }
+
+    private synchronized void schedule(Product product) {
+        long at = dueMillis(product);
+        if (at == Long.MIN_VALUE || closed) return;
+        Due due = new Due(at, product.uuid());
+        queue.add(due);
+        dueById.put(due.id(), due);
+    }
+
+    private synchronized void unschedule(UUID id) {
+        Due due = dueById.remove(id);
+        if (due != null) {
+            queue.remove(due);
+        }
+    }
+
+    private synchronized void requeue(List<Due> dues) {
+        for (Due due : dues) {
+            if (!closed && !dueById.containsKey(due.id())) {
+                queue.add(due);
+                dueById.put(due.id(), due);
+            }
+        }
+    }
+
+    // Long.MIN_VALUE when the product never expires, Long.MAX_VALUE when it is never due.
+    private long dueMillis(Product product) {
+        if (!(product instanceof Perishable perishable) || perishable.expirationDate() == null) {
+            return Long.MIN_VALUE;
+        }
+        LocalDate expired = perishable.expirationDate().plusDays(1);
+        try {
+            return expired.atStartOfDay(clock.getZone()).toInstant()
+                    .plus(settings.gracePeriod(product.getCategory()))
+                    .toEpochMilli();
+        } catch (DateTimeException | ArithmeticException e) {
+            // Grace periods beyond the range of Instant or of epoch millis keep the product for good.
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * How long expired products are kept and how fast they are swept.
+     *
+     * @param gracePeriod          time an expired product stays in the warehouse; periods too long to
+     *                             reach keep it for good
+     * @param categoryGracePeriods grace periods replacing {@code gracePeriod} for some categories
+     * @param batchSize            most products evicted by one sweep
+     * @param interval             time between background sweeps
+     */
+    public record Settings(
+            Duration gracePeriod,
+            Map<Category, Duration> categoryGracePeriods,
+            int batchSize,
+            Duration interval
+    ) {
+        public static final Settings DEFAULT = new Settings(Duration.ZERO, Map.of(), 100, Duration.ofSeconds(1));
+
+        public Settings {
+            Objects.requireNonNull(gracePeriod, "Grace period cannot be null.");
+            Objects.requireNonNull(categoryGracePeriods, "Category grace periods cannot be null.");
+            Objects.requireNonNull(interval, "Interval cannot be null.");
+            if (gracePeriod.isNegative() || categoryGracePeriods.values().stream().anyMatch(Duration::isNegative)) {
+                throw new IllegalArgumentException("Grace periods cannot be negative.");
+            }
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive.");
+            }
+            if (interval.toMillis() < 1) {
+                throw new IllegalArgumentException("Interval must be at least a millisecond.");
+            }
+            categoryGracePeriods = Map.copyOf(categoryGracePeriods);
+        }
+
+        public Settings withGracePeriod(Category category, Duration grace) {
+            Objects.requireNonNull(category, "Category cannot be null.");
+            Objects.requireNonNull(grace, "Grace period cannot be null.");
+            Map<Category, Duration> periods = new HashMap<>(categoryGracePeriods);
+            periods.put(category, grace);
+            return new Settings(gracePeriod, periods, batchSize, interval);
+        }
+
+        Duration gracePeriod(Category category) {
+            return categoryGracePeriods.getOrDefault(category, gracePeriod);
+        }
+    }
+
+    private record Due(long atMillis, UUID id) implements Comparable<Due> {
+        @Override
+        public int compareTo(Due other) {
+            int byTime = Long.compare(atMillis, other.atMillis);
+            return byTime != 0 ? byTime : id.compareTo(other.id);
+        }
+    }
+}
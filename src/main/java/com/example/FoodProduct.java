@@ -7,6 +7,9 @@ import java.util.UUID;
 /// /
 public class FoodProduct extends Product implements Perishable, Shippable {
 
+    /** Shipping cost per kilogram. */
+    static final BigDecimal SHIPPING_RATE = BigDecimal.valueOf(50);
+
     private final LocalDate expirationDate;
     private final BigDecimal weight; // in kilograms
     //
@@ -23,6 +26,15 @@ public class FoodProduct extends Product implements Perishable, Shippable {
         this.expirationDate = expirationDate;
         this.weight = weight;
     }
+
+    /**
+     * Copies {@code source} with a new price, for {@link #withPrice} in this class and subclasses.
+     */
+    protected FoodProduct(FoodProduct source, BigDecimal price) {
+        super(source, price);
+        this.expirationDate = source.expirationDate;
+        this.weight = source.weight;
+    }
     //
     public LocalDate getExpirationDate() {
         return expirationDate;
@@ -36,7 +48,12 @@ public class FoodProduct extends Product implements Perishable, Shippable {
     @Override
     public BigDecimal calculateShippingCost() {
         // Shipping rule: cost = weight * 50//
-        return weight.multiply(BigDecimal.valueOf(50));
+        return weight.multiply(SHIPPING_RATE);
+    }
+
+    @Override
+    protected FoodProduct withPrice(BigDecimal newPrice) {
+        return new FoodProduct(this, newPrice);
     }
 
     @Override
@@ -0,0 +1,292 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a set of {@link WarehouseAnalyzer.ShippingGroup}s up to date as shippable products are
+ * added to and removed from the {@link Warehouse}.
+ * <p>
+ * Groups are kept in a tree ordered by remaining capacity, so a new item goes into the fullest group
+ * that still fits it and a removal only touches its own group, both in O(log groups). Inserting one
+ * item at a time packs less tightly than planning everything at once, so {@link #reoptimize} (or a
+ * background schedule started with {@link #startReoptimizing}) periodically replaces the groups with
+ * a {@link ShippingPlanner} result when that uses fewer of them.
+ */
+public class IncrementalShippingPlanner implements AutoCloseable {
+
+    private static final int SCALE = 6;
+
+    private final Warehouse warehouse;
+    private final BigDecimal maxWeightPerGroup;
+    private final long capacity;
+    private final WarehouseListener listener = new WarehouseListener() {
+        @Override
+        public void productAdded(Product product) {
+            add(product);
+        }
+
+        @Override
+        public void productRemoved(Product product) {
+            remove(product);
+        }
+
+        @Override
+        public void productUpdated(Product before, Product after) {
+            update(before, after);
+        }
+    };
+
+    // Guarded by this.
+    private Groups groups = new Groups();
+    private ScheduledExecutorService scheduler;
+
+    public IncrementalShippingPlanner(Warehouse warehouse, BigDecimal maxWeightPerGroup) {
+        if (maxWeightPerGroup == null || maxWeightPerGroup.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Max weight per group must be positive.");
+        }
+        this.warehouse = warehouse;
+        this.maxWeightPerGroup = maxWeightPerGroup;
+        this.capacity = Math.max(1, maxWeightPerGroup.setScale(SCALE, RoundingMode.FLOOR).unscaledValue().longValueExact());
+
+        // Changes committed after subscribing wait for this lock, so none are missed or applied twice.
+        synchronized (this) {
+            warehouse.addListener(listener);
+            for (Product product : Warehouse.getProducts()) {
+                groups.insert(product);
+            }
+        }
+    }
+
+    public synchronized List<WarehouseAnalyzer.ShippingGroup> getGroups() {
+        List<WarehouseAnalyzer.ShippingGroup> result = new ArrayList<>(groups.byResidual.size());
+        for (Group group : groups.byResidual) {
+            result.add(new WarehouseAnalyzer.ShippingGroup(group.shippables()));
+        }
+        return result;
+    }
+
+    public synchronized int groupCount() {
+        return groups.byResidual.size();
+    }
+
+    /**
+     * Plans all current items from scratch within {@code timeBudget} and switches to that plan if it
+     * needs fewer groups. Changes made while planning are carried over. Returns whether the groups
+     * were replaced.
+     */
+    public boolean reoptimize(Duration timeBudget) {
+        List<Shippable> items = new ArrayList<>();
+        synchronized (this) {
+            for (Group group : groups.byResidual) {
+                items.addAll(group.shippables());
+            }
+        }
+
+        ShippingPlanner.ShippingPlan plan = new ShippingPlanner(timeBudget).plan(items, maxWeightPerGroup);
+
+        synchronized (this) {
+            Groups planned = new Groups();
+            for (WarehouseAnalyzer.ShippingGroup shippingGroup : plan.groups()) {
+                Group group = null;
+                for (Shippable item : shippingGroup.getProducts()) {
+                    Entry current = groups.entry(((Product) item).uuid());
+                    // Skip items removed meanwhile, and replacements that no longer fit here.
+                    if (current != null && (group == null || current.weight <= group.residual)) {
+                        if (group == null) group = planned.open();
+                        planned.place(group, current);
+                    }
+                }
+                if (group != null) planned.close(group);
+            }
+            // Items added while the plan was being computed, or left out above.
+            for (Group group : groups.byResidual) {
+                for (Entry entry : group.items.values()) {
+                    if (planned.entry(entry.product.uuid()) == null) {
+                        planned.insert(entry.product);
+                    }
+                }
+            }
+
+            if (planned.byResidual.size() < groups.byResidual.size()) {
+                groups = planned;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Runs {@link #reoptimize} every {@code interval} on a background thread until {@link #close()}.
+     */
+    public synchronized void startReoptimizing(Duration interval, Duration timeBudget) {
+        if (interval == null || interval.toMillis() < 1) {
+            throw new IllegalArgumentException("Interval must be at least a millisecond.");
+        }
+        if (timeBudget == null || timeBudget.isNegative()) {
+            throw new IllegalArgumentException("Time budget cannot be negative.");
+        }
+        if (scheduler != null) {
+            throw new IllegalStateException("Background re-optimization is already running.");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shipping-reoptimizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> reoptimize(timeBudget), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops following the warehouse and any background re-optimization.
+     */
+    @Override
+    public void close() {
+        warehouse.removeListener(listener);
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+        }
+    }
+
+    private synchronized void add(Product product) {
+        if (groups.entry(product.uuid()) != null) {
+            groups.delete(product.uuid());
+        }
+        groups.insert(product);
+    }
+
+    private synchronized void remove(Product product) {
+        groups.delete(product.uuid());
+    }
+
+    private synchronized void update(Product before, Product after) {
+        Entry entry = groups.entry(before.uuid());
+        if (entry != null && after instanceof Shippable && entry.weight == units(after)) {
+            entry.product = after;
+        } else {
+            groups.delete(before.uuid());
+            groups.insert(after);
+        }
+    }
+
+    // Runs inside the warehouse listener, so it must not throw for any weight a product can have.
+    private long units(Product product) {
+        BigDecimal weight = ((Shippable) product).weight();
+        if (weight == null) return 0;
+        if (weight.compareTo(maxWeightPerGroup) > 0) {
+            // Travels alone; the exact figure does not matter and may not fit in a long.
+            return capacity + 1;
+        }
+        return weight.setScale(SCALE, RoundingMode.CEILING).unscaledValue().longValueExact();
+    }
+
+    /**
+     * The groups plus the index from product id to its entry.
+     */
+    private final class Groups {
+        final TreeSet<Group> byResidual = new TreeSet<>(
+                Comparator.comparingLong((Group g) -> g.residual).thenComparingLong(g -> g.id));
+        final Map<UUID, Group> groupOf = new HashMap<>();
+        long nextId;
+
+        Entry entry(UUID id) {
+            Group group = groupOf.get(id);
+            return group == null ? null : group.items.get(id);
+        }
+
+        void insert(Product product) {
+            if (!(product instanceof Shippable)) return;
+            Entry entry = new Entry(product, units(product));
+
+            Group group = null;
+            if (entry.weight <= capacity) {
+                group = byResidual.ceiling(Group.probe(entry.weight));
+            }
+            if (group == null) {
+                group = open();
+            } else {
+                byResidual.remove(group);
+            }
+            place(group, entry);
+            close(group);
+        }
+
+        void delete(UUID id) {
+            Group group = groupOf.remove(id);
+            if (group == null) return;
+            byResidual.remove(group);
+            Entry entry = group.items.remove(id);
+            group.residual += entry.weight;
+            if (!group.items.isEmpty()) {
+                byResidual.add(group);
+            }
+        }
+
+        Group open() {
+            return new Group(nextId++, capacity);
+        }
+
+        // Group must not be in the tree while it is being filled.
+        void place(Group group, Entry entry) {
+            group.items.put(entry.product.uuid(), entry);
+            group.residual -= entry.weight;
+            groupOf.put(entry.product.uuid(), group);
+        }
+
+        void close(Group group) {
+            byResidual.add(group);
+        }
+    }
+
+    private static final class Group {
+        final long id;
+        final Map<UUID, Entry> items = new LinkedHashMap<>();
+        long residual;
+
+        Group(long id, long residual) {
+            this.id = id;
+            this.residual = residual;
+        }
+
+        // Sorts before every real group with the same residual capacity.
+        static Group probe(long residual) {
+            return new Group(Long.MIN_VALUE, residual);
+        }
+
+        List<Shippable> shippables() {
+            List<Shippable> result = new ArrayList<>(items.size());
+            for (Entry entry : items.values()) {
+                result.add((Shippable) entry.product);
+            }
+            return result;
+        }
+    }
+
+    private static final class Entry {
+        Product product;
+        final long weight;
+
+        Entry(Product product, long weight) {
+            this.product = product;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * KLL quantile sketch over doubles.
+ * <p>
+ * Items go into level 0. When the sketch holds more than its capacity, the lowest level that is over
+ * its own capacity is sorted and every other item, starting at a random offset, moves up one level
+ * with twice the weight. Level capacities shrink by 2/3 going down from the top, so the sketch keeps
+ * about {@code 3k} items however many were added, and a rank is off by roughly {@code n / k}.
+ * Two sketches merge by concatenating their levels and compacting. Not thread-safe.
+ */
+final class KllSketch {
+
+    private static final double DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private final SplittableRandom random;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    // Sorted items and cumulative weights, rebuilt on the first query after a change.
+    private double[] sortedItems;
+    private long[] cumulativeWeights;
+
+    KllSketch(int k) {
+        if (k < 8) {
+            throw new IllegalArgumentException("Sketch size must be at least 8.");
+        }
+        this.k = k;
+        this.random = new SplittableRandom(k);
+        levels[0] = new double[k];
+    }
+
+    int k() {
+        return k;
+    }
+
+    long count() {
+        return count;
+    }
+
+    void add(double value) {
+        append(0, value);
+        count++;
+        min = count == 1 ? value : Math.min(min, value);
+        max = count == 1 ? value : Math.max(max, value);
+        compress();
+    }
+
+    void merge(KllSketch other) {
+        if (other.count == 0) return;
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        compress();
+    }
+
+    KllSketch copy() {
+        KllSketch copy = new KllSketch(k);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Value at normalized rank {@code q}: 0 is the minimum, 1 the maximum. NaN when empty.
+     */
+    double quantile(double q) {
+        if (q < 0 || q > 1 || Double.isNaN(q)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1.");
+        }
+        if (count == 0) return Double.NaN;
+        if (q == 0) return min;
+        if (q == 1) return max;
+        prepareSorted();
+        long rank = (long) Math.ceil(q * cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = Arrays.binarySearch(cumulativeWeights, rank);
+        if (i < 0) i = -i - 1;
+        return sortedItems[Math.min(i, sortedItems.length - 1)];
+    }
+
+    int retainedItems() {
+        int total = 0;
+        for (int size : sizes) total += size;
+        return total;
+    }
+
+    private void append(int level, double value) {
+        while (level >= levels.length) {
+            int top = levels.length;
+            levels = Arrays.copyOf(levels, top + 1);
+            sizes = Arrays.copyOf(sizes, top + 1);
+            levels[top] = new double[capacity(top)];
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(2, sizes[level] * 2));
+        }
+        levels[level][sizes[level]++] = value;
+        sortedItems = null;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.length - 1 - level;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(DECAY, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int h = 0; h < levels.length; h++) total += capacity(h);
+        return total;
+    }
+
+    private void compress() {
+        while (retainedItems() > totalCapacity()) {
+            int h = 0;
+            while (sizes[h] < capacity(h)) h++;
+            compact(h);
+        }
+    }
+
+    // Halves level h into level h + 1; an odd item out stays behind.
+    private void compact(int h) {
+        double[] items = levels[h];
+        int size = sizes[h];
+        Arrays.sort(items, 0, size);
+        int pairs = size / 2;
+        int offset = random.nextInt(2);
+        double leftover = items[size - 1];
+        for (int p = 0; p < pairs; p++) {
+            append(h + 1, levels[h][2 * p + offset]);
+        }
+        if (size % 2 == 1) {
+            levels[h][0] = leftover;
+            sizes[h] = 1;
+        } else {
+            sizes[h] = 0;
+        }
+    }
+
+    private void prepareSorted() {
+        if (sortedItems != null) return;
+        int n = retainedItems();
+        double[] items = new double[n];
+        long[] weights = new long[n];
+        int at = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                items[at] = levels[h][i];
+                weights[at] = 1L << h;
+                at++;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(items[a], items[b]));
+
+        double[] sorted = new double[n];
+        long[] cumulative = new long[n];
+        long running = 0;
+        for (int i = 0; i < n; i++) {
+            sorted[i] = items[order[i]];
+            running += weights[order[i]];
+            cumulative[i] = running;
+        }
+        sortedItems = sorted;
+        cumulativeWeights = cumulative;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example;
+
+import java.lang.ref.WeakReference;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shared deduplication of product names.
+ * <p>
+ * Every distinct name is kept once, as one canonical {@code String} that all products with that
+ * name share. The JVM already stores Latin-1 strings one byte per character, so sharing the
+ * instance is what saves memory when thousands of products are called "Milk 1L". Names are held
+ * weakly, so names of deleted products do not pile up. The pool is split into independently locked
+ * segments by hash, so products created on different threads rarely wait for each other.
+ * {@link Matcher} answers a search once per distinct name.
+ */
+final class NamePool {
+
+    private static final int SEGMENTS = 64;
+    private static final NamePool SHARED = new NamePool();
+    private static final char[] LOWER_LATIN1 = new char[256];
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            LOWER_LATIN1[c] = Character.toLowerCase((char) c);
+        }
+    }
+
+    // Each segment is guarded by itself.
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    NamePool() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    static NamePool shared() {
+        return SHARED;
+    }
+
+    /**
+     * The canonical instance of {@code name}, adding it if no equal name is stored.
+     */
+    String intern(String name) {
+        if (name == null) return null;
+        int hash = name.hashCode();
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+        synchronized (segment) {
+            WeakReference<String> ref = segment.get(name);
+            String stored = ref == null ? null : ref.get();
+            if (stored != null) {
+                return stored;
+            }
+            segment.put(name, new WeakReference<>(name));
+            return name;
+        }
+    }
+
+    /**
+     * Number of names currently stored.
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Tests names for containing {@code lowerCaseTerm} after {@code toLowerCase(Locale.ROOT)},
+     * remembering the answer per name instance for the life of the matcher.
+     */
+    Matcher matcher(String lowerCaseTerm) {
+        return new Matcher(lowerCaseTerm);
+    }
+
+    /**
+     * Not thread-safe; one matcher serves one search.
+     */
+    static final class Matcher {
+        private final String term;
+        private final boolean latin1Term;
+        // Keyed by instance: pooled names are canonical, so each distinct name is tested once.
+        private final Map<String, Boolean> seen = new IdentityHashMap<>();
+
+        private Matcher(String term) {
+            this.term = term;
+            this.latin1Term = isLatin1(term);
+        }
+
+        /**
+         * Whether {@code name} contains the term.
+         */
+        boolean matches(String name) {
+            if (name == null) return false;
+            Boolean known = seen.get(name);
+            if (known == null) {
+                known = test(name);
+                seen.put(name, known);
+            }
+            return known;
+        }
+
+        private boolean test(String name) {
+            if (!isLatin1(name)) {
+                return name.toLowerCase(Locale.ROOT).contains(term);
+            }
+            return latin1Term && containsLowerCase(name, term);
+        }
+    }
+
+    private static boolean containsLowerCase(String text, String term) {
+        int last = text.length() - term.length();
+        outer:
+        for (int i = 0; i <= last; i++) {
+            for (int j = 0; j < term.length(); j++) {
+                if (LOWER_LATIN1[text.charAt(i + j)] != term.charAt(j)) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) return false;
+        }
+        return true;
+    }
+
+    // The value points back at the key weakly, so the entry does not keep its own name alive.
+    private static final class Segment extends WeakHashMap<String, WeakReference<String>> {
+    }
+}
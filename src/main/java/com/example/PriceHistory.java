@@ -0,0 +1,156 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Records every price each product of the {@link Warehouse} has had, so prices and the total
+ * inventory value can be looked up as of any past moment since recording started.
+ * <p>
+ * Histories are compressed per product (see {@link PriceSeries}): a regular repricing takes a few
+ * bytes. Times come from the given {@link Clock} when a change is committed.
+ */
+public class PriceHistory implements AutoCloseable {
+
+    private final Warehouse warehouse;
+    private final Clock clock;
+    private final WarehouseListener listener = new WarehouseListener() {
+        @Override
+        public void productAdded(Product product) {
+            record(product.uuid(), product.price());
+        }
+
+        @Override
+        public void productRemoved(Product product) {
+            recordRemoved(product.uuid());
+        }
+
+        @Override
+        public void productUpdated(Product before, Product after) {
+            if (!Objects.equals(before.price(), after.price())) {
+                record(after.uuid(), after.price());
+            }
+        }
+    };
+
+    // Guarded by this.
+    private final Map<UUID, PriceSeries> series = new HashMap<>();
+
+    public PriceHistory(Warehouse warehouse) {
+        this(warehouse, Clock.systemUTC());
+    }
+
+    public PriceHistory(Warehouse warehouse, Clock clock) {
+        this.warehouse = warehouse;
+        this.clock = clock;
+
+        // Changes committed after subscribing wait for this lock, so none are missed or recorded twice.
+        synchronized (this) {
+            warehouse.addListener(listener);
+            for (Product product : Warehouse.getProducts()) {
+                record(product.uuid(), product.price());
+            }
+        }
+    }
+
+    /**
+     * Price of the product at {@code at}; empty if it was not in the warehouse then.
+     */
+    public synchronized Optional<BigDecimal> priceAt(UUID id, Instant at) {
+        PriceSeries s = series.get(id);
+        return s == null ? Optional.empty() : Optional.ofNullable(s.priceAt(at.toEpochMilli()));
+    }
+
+    /**
+     * Sum of the prices of all products in the warehouse at {@code at}.
+     */
+    public BigDecimal valuationAt(Instant at) {
+        return valuations(new long[]{at.toEpochMilli()})[0];
+    }
+
+    /**
+     * Inventory value at {@code from} and every {@code step} after it up to and including {@code to}.
+     * Each product's history is decoded once for the whole range.
+     */
+    public List<Valuation> valuationSeries(Instant from, Instant to, Duration step) {
+        if (step == null || step.isNegative() || step.isZero()) {
+            throw new IllegalArgumentException("Step must be positive.");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Range end cannot be before its start.");
+        }
+        long start = from.toEpochMilli();
+        long stepMillis = Math.max(1, step.toMillis());
+        int points = (int) Math.min(Integer.MAX_VALUE - 8, (to.toEpochMilli() - start) / stepMillis + 1);
+        long[] times = new long[points];
+        for (int i = 0; i < points; i++) {
+            times[i] = start + i * stepMillis;
+        }
+
+        BigDecimal[] values = valuations(times);
+        List<Valuation> result = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            result.add(new Valuation(Instant.ofEpochMilli(times[i]), values[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Number of price entries recorded, over all products.
+     */
+    public synchronized long entryCount() {
+        long total = 0;
+        for (PriceSeries s : series.values()) total += s.entryCount();
+        return total;
+    }
+
+    /**
+     * Size of the compressed histories in bytes, not counting per-product overhead.
+     */
+    public synchronized long encodedBytes() {
+        long total = 0;
+        for (PriceSeries s : series.values()) total += s.encodedBytes();
+        return total;
+    }
+
+    /**
+     * Stops recording; what was recorded stays available.
+     */
+    @Override
+    public void close() {
+        warehouse.removeListener(listener);
+    }
+
+    private synchronized BigDecimal[] valuations(long[] times) {
+        BigDecimal[] sums = new BigDecimal[times.length];
+        Arrays.fill(sums, BigDecimal.ZERO);
+        for (PriceSeries s : series.values()) {
+            s.accumulate(times, sums);
+        }
+        return sums;
+    }
+
+    private synchronized void record(UUID id, BigDecimal price) {
+        if (price == null) return;
+        series.computeIfAbsent(id, k -> new PriceSeries()).append(clock.millis(), price);
+    }
+
+    private synchronized void recordRemoved(UUID id) {
+        PriceSeries s = series.get(id);
+        if (s != null) {
+            s.appendRemoved(clock.millis());
+        }
+    }
+
+    public record Valuation(Instant at, BigDecimal value) { }
+}
@@ -0,0 +1,87 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * The live products of the warehouse ordered by price, overall and per category, updated from
+ * {@link ProductVersionStore} on every commit.
+ * <p>
+ * Products are ordered by price and then by id, so every product has exactly one place and a
+ * removed or repriced product is found and taken out by its old version. Keeping every product
+ * rather than only the current top K means removing a top product needs no rescan: the next one
+ * is already in place. A change costs O(log n) and reading the K most or least expensive products
+ * costs O(log n + K).
+ */
+final class PriceRanking implements ProductVersionStore.ChangeHandler {
+
+    static final Comparator<Product> BY_PRICE = Comparator.comparing(Product::price).thenComparing(Product::uuid);
+
+    private final NavigableSet<Product> all = new TreeSet<>(BY_PRICE);
+    private NavigableSet<Product>[] byCategory = newArray(0);
+
+    @Override
+    public synchronized void onChange(Product before, Product after) {
+        if (before != null) {
+            all.remove(before);
+            NavigableSet<Product> group = groupOrNull(before.getCategory());
+            if (group != null) group.remove(before);
+        }
+        if (after != null) {
+            all.add(after);
+            group(after.getCategory()).add(after);
+        }
+    }
+
+    /**
+     * Up to {@code limit} most expensive products in the category (any category when {@code null}),
+     * most expensive first.
+     */
+    synchronized List<Product> mostExpensive(Category category, int limit) {
+        NavigableSet<Product> set = category == null ? all : groupOrNull(category);
+        return set == null ? List.of() : take(set.descendingIterator(), limit);
+    }
+
+    /**
+     * Up to {@code limit} cheapest products in the category (any category when {@code null}),
+     * cheapest first.
+     */
+    synchronized List<Product> cheapest(Category category, int limit) {
+        NavigableSet<Product> set = category == null ? all : groupOrNull(category);
+        return set == null ? List.of() : take(set.iterator(), limit);
+    }
+
+    private static List<Product> take(Iterator<Product> products, int limit) {
+        List<Product> result = new ArrayList<>(Math.min(limit, 64));
+        while (result.size() < limit && products.hasNext()) {
+            result.add(products.next());
+        }
+        return result;
+    }
+
+    private NavigableSet<Product> group(Category category) {
+        int id = category.getId();
+        if (id >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, Math.max(id + 1, Category.count()));
+        }
+        if (byCategory[id] == null) {
+            byCategory[id] = new TreeSet<>(BY_PRICE);
+        }
+        return byCategory[id];
+    }
+
+    private NavigableSet<Product> groupOrNull(Category category) {
+        int id = category.getId();
+        return id < byCategory.length ? byCategory[id] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static NavigableSet<Product>[] newArray(int length) {
+        return (NavigableSet<Product>[]) new NavigableSet<?>[length];
+    }
+}
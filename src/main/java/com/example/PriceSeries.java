@@ -0,0 +1,290 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Price history of one product, packed into a byte array.
+ * <p>
+ * Each entry starts with a varint header {@code zigzag(priceDelta) << 2 | kind}. A {@code DELTA}
+ * entry then holds the delta-of-delta of its timestamp, so a product repriced at a steady pace costs
+ * about two bytes per change. Every {@value #CHECKPOINT_INTERVAL} entries, and whenever the price
+ * scale changes or a delta does not fit, a {@code FULL} entry stores the time and price outright;
+ * lookups binary-search those checkpoints and decode forward from the nearest one. A {@code REMOVED}
+ * entry marks the product as gone until its next price. Not thread-safe.
+ */
+final class PriceSeries {
+
+    static final int CHECKPOINT_INTERVAL = 64;
+
+    private static final int DELTA = 0;
+    private static final int FULL = 1;
+    private static final int REMOVED = 2;
+    private static final int FULL_BIG = 3;
+
+    private byte[] bytes = new byte[16];
+    private int length;
+    private int entries;
+
+    private long[] checkpointTimes = new long[1];
+    private int[] checkpointOffsets = new int[1];
+    private int checkpoints;
+
+    // Writer state, the same as a reader's after decoding every entry.
+    private final Cursor last = new Cursor();
+
+    int entryCount() {
+        return entries;
+    }
+
+    int encodedBytes() {
+        return length;
+    }
+
+    /**
+     * Appends a price at {@code millis}; earlier times than the last entry are moved up to it.
+     */
+    void append(long millis, BigDecimal price) {
+        long time = entries == 0 ? millis : Math.max(millis, last.time);
+        BigInteger unscaled = price.unscaledValue();
+        boolean fitsLong = unscaled.bitLength() < 64;
+
+        if (entries % CHECKPOINT_INTERVAL == 0 || !fitsLong || !last.priced || last.big != null
+                || price.scale() != last.scale || !deltaFits(unscaled.longValue(), last.unscaled)) {
+            writeFull(time, price);
+            return;
+        }
+        long priceDelta = unscaled.longValue() - last.unscaled;
+        writeVarLong((zigzag(priceDelta) << 2) | DELTA);
+        writeTimeDelta(time);
+        last.unscaled = unscaled.longValue();
+        last.priced = true;
+        last.live = true;
+        entries++;
+    }
+
+    void appendRemoved(long millis) {
+        if (entries == 0) return;
+        long time = Math.max(millis, last.time);
+        if (entries % CHECKPOINT_INTERVAL == 0) {
+            // Removal entries carry no price, so checkpoint on the current one first.
+            writeFull(time, last.price());
+        }
+        writeVarLong(REMOVED);
+        writeTimeDelta(time);
+        last.live = false;
+        entries++;
+    }
+
+    /**
+     * Price live at {@code millis}, or {@code null} when the product did not exist then.
+     */
+    BigDecimal priceAt(long millis) {
+        int c = checkpointAtOrBefore(millis);
+        if (c < 0) return null;
+        Cursor cursor = new Cursor();
+        cursor.offset = checkpointOffsets[c];
+        cursor.next();
+        while (cursor.offset < length) {
+            Cursor ahead = cursor.copy();
+            ahead.next();
+            if (ahead.time > millis) break;
+            cursor = ahead;
+        }
+        return cursor.live ? cursor.price() : null;
+    }
+
+    /**
+     * Adds the price live at each of {@code times} (ascending) into {@code sums}.
+     */
+    void accumulate(long[] times, BigDecimal[] sums) {
+        if (entries == 0 || times.length == 0) return;
+        Cursor current = new Cursor();
+        Cursor ahead = new Cursor();
+        ahead.offset = checkpointOffsets[Math.max(0, checkpointAtOrBefore(times[0]))];
+        ahead.next();
+        for (int i = 0; i < times.length; i++) {
+            while (ahead.time <= times[i]) {
+                current = ahead.copy();
+                if (ahead.offset == length) {
+                    ahead.time = Long.MAX_VALUE;
+                } else {
+                    ahead.next();
+                }
+            }
+            if (current.live) {
+                sums[i] = sums[i].add(current.price());
+            }
+        }
+    }
+
+    private void writeFull(long time, BigDecimal price) {
+        addCheckpoint(time);
+        BigInteger unscaled = price.unscaledValue();
+        if (unscaled.bitLength() < 64) {
+            writeVarLong(FULL);
+            writeVarLong(zigzag(time));
+            writeVarLong(zigzag(price.scale()));
+            writeVarLong(zigzag(unscaled.longValue()));
+            last.unscaled = unscaled.longValue();
+            last.big = null;
+        } else {
+            byte[] raw = unscaled.toByteArray();
+            writeVarLong(FULL_BIG);
+            writeVarLong(zigzag(time));
+            writeVarLong(zigzag(price.scale()));
+            writeVarLong(raw.length);
+            ensure(raw.length);
+            System.arraycopy(raw, 0, bytes, length, raw.length);
+            length += raw.length;
+            last.big = price;
+        }
+        last.scale = price.scale();
+        last.time = time;
+        last.timeDelta = 0;
+        last.priced = true;
+        last.live = true;
+        entries++;
+    }
+
+    private void writeTimeDelta(long time) {
+        long delta = time - last.time;
+        writeVarLong(zigzag(delta - last.timeDelta));
+        last.timeDelta = delta;
+        last.time = time;
+    }
+
+    private void addCheckpoint(long time) {
+        if (checkpoints == checkpointTimes.length) {
+            checkpointTimes = Arrays.copyOf(checkpointTimes, checkpoints * 2);
+            checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpoints * 2);
+        }
+        checkpointTimes[checkpoints] = time;
+        checkpointOffsets[checkpoints] = length;
+        checkpoints++;
+    }
+
+    private int checkpointAtOrBefore(long millis) {
+        int i = Arrays.binarySearch(checkpointTimes, 0, checkpoints, millis);
+        if (i >= 0) {
+            // Several checkpoints can share a millisecond; take the last.
+            while (i + 1 < checkpoints && checkpointTimes[i + 1] == millis) i++;
+            return i;
+        }
+        return -i - 2;
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+    }
+
+    // The shifted zigzag delta must stay a non-negative long.
+    private static boolean deltaFits(long value, long previous) {
+        long delta = value - previous;
+        boolean overflow = ((value ^ previous) & (value ^ delta)) < 0;
+        return !overflow && Math.abs(delta) < (1L << 60);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Decoding position plus the time and price state after the entries read so far.
+     */
+    private final class Cursor {
+        int offset;
+        long time;
+        long timeDelta;
+        long unscaled;
+        int scale;
+        BigDecimal big;
+        boolean priced;
+        boolean live;
+
+        void next() {
+            long header = readVarLong();
+            int kind = (int) (header & 3);
+            switch (kind) {
+                case DELTA -> {
+                    unscaled += unzigzag(header >>> 2);
+                    readTimeDelta();
+                    live = true;
+                }
+                case REMOVED -> {
+                    readTimeDelta();
+                    live = false;
+                }
+                case FULL -> {
+                    time = unzigzag(readVarLong());
+                    scale = (int) unzigzag(readVarLong());
+                    unscaled = unzigzag(readVarLong());
+                    big = null;
+                    timeDelta = 0;
+                    priced = true;
+                    live = true;
+                }
+                default -> {
+                    time = unzigzag(readVarLong());
+                    scale = (int) unzigzag(readVarLong());
+                    int size = (int) readVarLong();
+                    big = new BigDecimal(new BigInteger(Arrays.copyOfRange(bytes, offset, offset + size)), scale);
+                    offset += size;
+                    timeDelta = 0;
+                    priced = true;
+                    live = true;
+                }
+            }
+        }
+
+        BigDecimal price() {
+            return big != null ? big : BigDecimal.valueOf(unscaled, scale);
+        }
+
+        Cursor copy() {
+            Cursor copy = new Cursor();
+            copy.offset = offset;
+            copy.time = time;
+            copy.timeDelta = timeDelta;
+            copy.unscaled = unscaled;
+            copy.scale = scale;
+            copy.big = big;
+            copy.priced = priced;
+            copy.live = live;
+            return copy;
+        }
+
+        private void readTimeDelta() {
+            timeDelta += unzigzag(readVarLong());
+            time += timeDelta;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
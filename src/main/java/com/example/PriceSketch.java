@@ -0,0 +1,114 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Approximate price distribution: quantiles from a {@link KllSketch} and the number of distinct
+ * prices from a {@link HyperLogLog}.
+ * <p>
+ * Size is fixed by the {@link Accuracy} whatever the number of prices added, and sketches with the
+ * same accuracy can be merged, so sketches kept per category or per warehouse shard combine into
+ * one. Answers are cached until the next change. Not thread-safe.
+ */
+public final class PriceSketch {
+
+    /**
+     * @param quantileK         KLL size; quantile ranks are off by about {@code 1.7 / quantileK}
+     * @param distinctPrecision HyperLogLog uses {@code 2^distinctPrecision} registers; distinct
+     *                          counts are off by about {@code 1.04 / sqrt(2^distinctPrecision)}
+     */
+    public record Accuracy(int quantileK, int distinctPrecision) {
+        public static final Accuracy DEFAULT = new Accuracy(200, 12);
+
+        public Accuracy {
+            if (quantileK < 8) {
+                throw new IllegalArgumentException("Quantile accuracy must be at least 8.");
+            }
+            if (distinctPrecision < 4 || distinctPrecision > 18) {
+                throw new IllegalArgumentException("Distinct precision must be between 4 and 18.");
+            }
+        }
+    }
+
+    private final Accuracy accuracy;
+    private final KllSketch quantiles;
+    private final HyperLogLog distinct;
+    private long distinctEstimate = -1;
+
+    public PriceSketch() {
+        this(Accuracy.DEFAULT);
+    }
+
+    public PriceSketch(Accuracy accuracy) {
+        this.accuracy = accuracy;
+        this.quantiles = new KllSketch(accuracy.quantileK());
+        this.distinct = new HyperLogLog(accuracy.distinctPrecision());
+    }
+
+    private PriceSketch(Accuracy accuracy, KllSketch quantiles, HyperLogLog distinct) {
+        this.accuracy = accuracy;
+        this.quantiles = quantiles;
+        this.distinct = distinct;
+    }
+
+    public Accuracy accuracy() {
+        return accuracy;
+    }
+
+    public void add(BigDecimal price) {
+        if (price == null) return;
+        quantiles.add(price.doubleValue());
+        distinct.add(hash(price));
+        distinctEstimate = -1;
+    }
+
+    /**
+     * Adds everything {@code other} has seen to this sketch and returns this sketch.
+     */
+    public PriceSketch merge(PriceSketch other) {
+        if (!accuracy.equals(other.accuracy)) {
+            throw new IllegalArgumentException("Cannot merge sketches of different accuracy.");
+        }
+        quantiles.merge(other.quantiles);
+        distinct.merge(other.distinct);
+        distinctEstimate = -1;
+        return this;
+    }
+
+    public PriceSketch copy() {
+        return new PriceSketch(accuracy, quantiles.copy(), distinct.copy());
+    }
+
+    /**
+     * Number of prices added.
+     */
+    public long count() {
+        return quantiles.count();
+    }
+
+    /**
+     * Approximate price at rank {@code q}, from 0 (cheapest) to 1 (most expensive); empty when
+     * nothing was added.
+     */
+    public Optional<BigDecimal> quantile(double q) {
+        double value = quantiles.quantile(q);
+        return Double.isNaN(value) ? Optional.empty() : Optional.of(BigDecimal.valueOf(value));
+    }
+
+    public long distinctCount() {
+        if (distinctEstimate < 0) {
+            distinctEstimate = quantiles.count() == 0 ? 0 : distinct.estimate();
+        }
+        return distinctEstimate;
+    }
+
+    // Equal prices hash alike whatever their scale, so 10.0 and 10.00 count once.
+    private static long hash(BigDecimal price) {
+        BigDecimal normalized = price.signum() == 0 ? BigDecimal.ZERO : price.stripTrailingZeros();
+        if (normalized.unscaledValue().bitLength() < 64) {
+            return HyperLogLog.mix(normalized.unscaledValue().longValue() * 31 + normalized.scale());
+        }
+        return HyperLogLog.mix(normalized.hashCode());
+    }
+}
@@ -0,0 +1,136 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * One {@link PriceSketch} per category over the live products of the warehouse, updated from
+ * {@link ProductVersionStore} on every commit.
+ * <p>
+ * Sketches only grow, so a removed or repriced product stays counted in its old sketch. Once the
+ * removals since a category's sketch was built exceed a tenth of its live products, the sketch is
+ * rebuilt from the category's products in {@code source}, which must already reflect the commit
+ * being delivered.
+ */
+final class PriceSketchIndex implements ProductVersionStore.ChangeHandler {
+
+    static final double REBUILD_FRACTION = 0.1;
+
+    private final Function<Category, List<Product>> source;
+    private PriceSketch.Accuracy accuracy = PriceSketch.Accuracy.DEFAULT;
+    private Entry[] byCategory = new Entry[0];
+
+    PriceSketchIndex(Function<Category, List<Product>> source) {
+        this.source = source;
+    }
+
+    @Override
+    public synchronized void onChange(Product before, Product after) {
+        if (before != null && after != null && sameCategoryAndPrice(before, after)) {
+            return;
+        }
+        if (after != null) {
+            Entry entry = entry(after.getCategory());
+            entry.sketch.add(after.price());
+            entry.live++;
+        }
+        if (before != null) {
+            Category category = before.getCategory();
+            Entry entry = entry(category);
+            entry.live--;
+            entry.stale++;
+            if (entry.live == 0) {
+                byCategory[category.getId()] = null;
+            } else if (entry.stale > REBUILD_FRACTION * entry.live) {
+                rebuild(category);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds every sketch at the new accuracy. Must not run concurrently with a commit.
+     */
+    synchronized void configure(PriceSketch.Accuracy accuracy) {
+        this.accuracy = accuracy;
+        for (int id = 0; id < byCategory.length; id++) {
+            if (byCategory[id] != null) {
+                rebuild(Category.byId(id));
+            }
+        }
+    }
+
+    synchronized PriceSketch.Accuracy accuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Copy of the sketch for {@code category}, or of all categories merged when {@code null}.
+     */
+    synchronized PriceSketch sketch(Category category) {
+        if (category != null) {
+            Entry entry = entryOrNull(category);
+            return entry == null ? new PriceSketch(accuracy) : entry.sketch.copy();
+        }
+        PriceSketch merged = new PriceSketch(accuracy);
+        for (Entry entry : byCategory) {
+            if (entry != null) merged.merge(entry.sketch);
+        }
+        return merged;
+    }
+
+    synchronized Optional<BigDecimal> quantile(Category category, double q) {
+        if (category == null) return sketch(null).quantile(q);
+        Entry entry = entryOrNull(category);
+        return entry == null ? new PriceSketch(accuracy).quantile(q) : entry.sketch.quantile(q);
+    }
+
+    synchronized long distinctCount(Category category) {
+        if (category == null) return sketch(null).distinctCount();
+        Entry entry = entryOrNull(category);
+        return entry == null ? 0 : entry.sketch.distinctCount();
+    }
+
+    private void rebuild(Category category) {
+        Entry entry = new Entry(accuracy);
+        for (Product product : source.apply(category)) {
+            entry.sketch.add(product.price());
+            entry.live++;
+        }
+        byCategory[category.getId()] = entry.live == 0 ? null : entry;
+    }
+
+    private Entry entry(Category category) {
+        int id = category.getId();
+        if (id >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, Math.max(id + 1, Category.count()));
+        }
+        if (byCategory[id] == null) {
+            byCategory[id] = new Entry(accuracy);
+        }
+        return byCategory[id];
+    }
+
+    private Entry entryOrNull(Category category) {
+        int id = category.getId();
+        return id < byCategory.length ? byCategory[id] : null;
+    }
+
+    private static boolean sameCategoryAndPrice(Product before, Product after) {
+        if (before.getCategory() != after.getCategory()) return false;
+        if (before.price() == null || after.price() == null) return before.price() == after.price();
+        return before.price().compareTo(after.price()) == 0;
+    }
+
+    private static final class Entry {
+        final PriceSketch sketch;
+        int live;
+        int stale;
+
+        Entry(PriceSketch.Accuracy accuracy) {
+            this.sketch = new PriceSketch(accuracy);
+        }
+    }
+}
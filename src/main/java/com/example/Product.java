@@ -8,18 +8,27 @@ public abstract class Product {
     private final UUID uuid;
     private final String name;
     private final Category category;
-    private BigDecimal price;
+    private final BigDecimal price;
     ///  /
     public Product(UUID uuid, String name, Category category, BigDecimal price) {
-        if (price == null || price.compareTo(BigDecimal.ZERO) < 0) {
-            throw new IllegalArgumentException("Price cannot be negative.");
-        }
+        checkPrice(price);
         this.uuid = uuid;
-        this.name = name;
+        this.name = NamePool.shared().intern(name);
         this.category = category;
         this.price = price;
     }
 
+    /**
+     * Copies {@code source} with a new price, for {@link #withPrice}.
+     */
+    protected Product(Product source, BigDecimal price) {
+        checkPrice(price);
+        this.uuid = source.uuid;
+        this.name = source.name;
+        this.category = source.category;
+        this.price = price;
+    }
+
     public UUID uuid() {
         return uuid;
     }
@@ -36,11 +45,18 @@ public abstract class Product {
         return price;
     }
 
-    public void setPrice(BigDecimal newPrice) {
-        if (newPrice == null || newPrice.compareTo(BigDecimal.ZERO) < 0) {
+    /**
+     * Returns a copy of this product with a new price, for a new warehouse version. Products are
+     * immutable, so snapshots and indexes keep the versions they were given; reprice through
+     * {@link Warehouse#updateProductPrice}. Subclasses return their own type, copying through
+     * their superclass's copy constructor.
+     */
+    protected abstract Product withPrice(BigDecimal newPrice);
+
+    private static void checkPrice(BigDecimal price) {
+        if (price == null || price.compareTo(BigDecimal.ZERO) < 0) {
             throw new IllegalArgumentException("Price cannot be negative.");
         }
-        this.price = newPrice;
     }
 
     public abstract String productDetails();
@@ -0,0 +1,29 @@
+package com.example;
+
+import java.math.BigDecimal;
+
+/**
+ * Yes/no properties of a product that {@link Warehouse} keeps bitmap indexes for.
+ */
+public enum ProductAttribute {
+    PERISHABLE,
+    SHIPPABLE,
+    /** Priced at or above {@link #HIGH_VALUE_THRESHOLD}. */
+    HIGH_VALUE,
+    /** Shippable and heavier than {@link #HEAVY_THRESHOLD} kg, which adds a shipping surcharge. */
+    HEAVY;
+
+    public static final BigDecimal HIGH_VALUE_THRESHOLD = new BigDecimal("1000");
+    public static final BigDecimal HEAVY_THRESHOLD = BigDecimal.valueOf(5);
+
+    public boolean test(Product product) {
+        return switch (this) {
+            case PERISHABLE -> product instanceof Perishable;
+            case SHIPPABLE -> product instanceof Shippable;
+            case HIGH_VALUE -> product.price().compareTo(HIGH_VALUE_THRESHOLD) >= 0;
+            case HEAVY -> product instanceof Shippable s
+                    && s.weight() != null
+                    && s.weight().compareTo(HEAVY_THRESHOLD) > 0;
+        };
+    }
+}
@@ -0,0 +1,436 @@
+package com.example;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Binary format for {@link FoodProduct}s and {@link ElectronicsProduct}s.
+ * <p>
+ * A record is a fixed {@value #HEADER_SIZE}-byte header followed by the UTF-8 name. All numbers are
+ * little-endian whatever the buffer's byte order:
+ * <pre>
+ *  0  u8   format version ({@value #VERSION})
+ *  1  u8   kind: 1 food, 2 electronics
+ *  2  u8   price scale
+ *  3  u8   weight scale
+ *  4  i32  category code in this codec's dictionary
+ *  8  i64  uuid, most significant bits
+ * 16  i64  uuid, least significant bits
+ * 24  i64  unscaled price
+ * 32  i64  unscaled weight
+ * 40  i32  food: expiry as epoch day ({@code Integer.MIN_VALUE} for none); electronics: warranty months
+ * 44  i32  name length in bytes
+ * 48  ...  name
+ * </pre>
+ * Category ids are local to a process, so records carry a code from the codec's dictionary instead.
+ * The dictionary is sent once with {@link #writeDictionary} and read back with
+ * {@link #readDictionary}. {@link #encodeAll}/{@link #decodeAll} bundle both. {@link View} reads
+ * single fields of a record in place. Codecs are not thread-safe.
+ */
+public final class ProductCodec {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 48;
+
+    static final int FOOD = 1;
+    static final int ELECTRONICS = 2;
+    static final int NO_EXPIRY = Integer.MIN_VALUE;
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private Category[] categoriesByCode = new Category[8];
+    private int categoryCount;
+    private int[] codeById = new int[0]; // category id -> code + 1, 0 when absent
+
+    /**
+     * Number of bytes {@code product} takes.
+     */
+    public static int encodedSize(Product product) {
+        return HEADER_SIZE + utf8Length(product.name());
+    }
+
+    /**
+     * Writes {@code product} at the buffer's position and advances it; returns the bytes written.
+     */
+    public int encode(Product product, ByteBuffer buffer) {
+        int kind;
+        BigDecimal weight;
+        int extra;
+        // Exact classes: a subclass would come back as its parent and lose whatever it adds.
+        if (product.getClass() == FoodProduct.class) {
+            FoodProduct food = (FoodProduct) product;
+            kind = FOOD;
+            weight = food.weight();
+            extra = food.getExpirationDate() == null ? NO_EXPIRY : epochDayOf(food.getExpirationDate());
+        } else if (product.getClass() == ElectronicsProduct.class) {
+            ElectronicsProduct electronics = (ElectronicsProduct) product;
+            kind = ELECTRONICS;
+            weight = electronics.weight();
+            extra = electronics.getWarrantyMonths();
+        } else {
+            throw new IllegalArgumentException("Unsupported product type: " + product.getClass().getName());
+        }
+
+        BigDecimal price = fitted(product.price(), "Price");
+        weight = fitted(weight, "Weight");
+        String name = product.name();
+        int nameLength = utf8Length(name);
+        int size = HEADER_SIZE + nameLength;
+        if (buffer.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        int at = buffer.position();
+        buffer.put(at, (byte) VERSION);
+        buffer.put(at + 1, (byte) kind);
+        buffer.put(at + 2, (byte) price.scale());
+        buffer.put(at + 3, (byte) weight.scale());
+        INT.set(buffer, at + 4, codeOf(product.getCategory()));
+        LONG.set(buffer, at + 8, product.uuid().getMostSignificantBits());
+        LONG.set(buffer, at + 16, product.uuid().getLeastSignificantBits());
+        LONG.set(buffer, at + 24, price.unscaledValue().longValue());
+        LONG.set(buffer, at + 32, weight.unscaledValue().longValue());
+        INT.set(buffer, at + 40, extra);
+        INT.set(buffer, at + 44, nameLength);
+        writeUtf8(name, buffer, at + HEADER_SIZE);
+        buffer.position(at + size);
+        return size;
+    }
+
+    /**
+     * Reads the record at the buffer's position and advances past it.
+     */
+    public Product decode(ByteBuffer buffer) {
+        View view = view().wrap(buffer, buffer.position());
+        Product product = view.toProduct();
+        buffer.position(buffer.position() + view.size());
+        return product;
+    }
+
+    /**
+     * Size of the record whose header starts at {@code offset}; only the header has to be there.
+     */
+    static int recordSize(ByteBuffer buffer, int offset) {
+        return HEADER_SIZE + (int) INT.get(buffer, offset + 44);
+    }
+
+    /**
+     * A reusable flyweight over records encoded with this codec's dictionary.
+     */
+    public View view() {
+        return new View();
+    }
+
+    public void writeDictionary(ByteBuffer buffer) {
+        int size = dictionarySize();
+        if (buffer.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        int at = buffer.position();
+        buffer.put(at++, (byte) VERSION);
+        INT.set(buffer, at, categoryCount);
+        at += 4;
+        for (int code = 0; code < categoryCount; code++) {
+            String name = categoriesByCode[code].getName();
+            int length = utf8Length(name);
+            INT.set(buffer, at, length);
+            writeUtf8(name, buffer, at + 4);
+            at += 4 + length;
+        }
+        buffer.position(at);
+    }
+
+    public static ProductCodec readDictionary(ByteBuffer buffer) {
+        int at = buffer.position();
+        checkVersion(buffer.get(at++));
+        int count = (int) INT.get(buffer, at);
+        at += 4;
+        ProductCodec codec = new ProductCodec();
+        for (int code = 0; code < count; code++) {
+            int length = (int) INT.get(buffer, at);
+            codec.codeOf(Category.of(readUtf8(buffer, at + 4, length)));
+            at += 4 + length;
+        }
+        buffer.position(at);
+        return codec;
+    }
+
+    /**
+     * Encodes the dictionary, the product count and every product into one buffer, flipped for
+     * reading.
+     */
+    public static ByteBuffer encodeAll(List<? extends Product> products) {
+        return encodeAll(products, (product, e) -> {
+            throw e;
+        });
+    }
+
+    /**
+     * Like {@link #encodeAll(List)}, but a product that cannot be encoded is left out and handed to
+     * {@code rejected} with the exception instead of failing the whole buffer.
+     */
+    public static ByteBuffer encodeAll(List<? extends Product> products, BiConsumer<? super Product, RuntimeException> rejected) {
+        ProductCodec codec = new ProductCodec();
+        int size = 4;
+        for (Product product : products) {
+            codec.codeOf(product.getCategory());
+            size += encodedSize(product);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(codec.dictionarySize() + size);
+        codec.writeDictionary(buffer);
+        int countAt = buffer.position();
+        buffer.position(countAt + 4);
+        int count = 0;
+        for (Product product : products) {
+            try {
+                codec.encode(product, buffer);
+                count++;
+            } catch (RuntimeException e) {
+                // encode checks everything before it writes, so nothing of the product is left behind.
+                rejected.accept(product, e);
+            }
+        }
+        INT.set(buffer, countAt, count);
+        return buffer.flip();
+    }
+
+    public static List<Product> decodeAll(ByteBuffer buffer) {
+        ProductCodec codec = readDictionary(buffer);
+        int count = (int) INT.get(buffer, buffer.position());
+        buffer.position(buffer.position() + 4);
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(codec.decode(buffer));
+        }
+        return products;
+    }
+
+    private int dictionarySize() {
+        int size = 5;
+        for (int code = 0; code < categoryCount; code++) {
+            size += 4 + utf8Length(categoriesByCode[code].getName());
+        }
+        return size;
+    }
+
+    private int codeOf(Category category) {
+        int id = category.getId();
+        if (id >= codeById.length) {
+            codeById = Arrays.copyOf(codeById, Math.max(id + 1, Category.count()));
+        }
+        if (codeById[id] == 0) {
+            if (categoryCount == categoriesByCode.length) {
+                categoriesByCode = Arrays.copyOf(categoriesByCode, categoryCount * 2);
+            }
+            categoriesByCode[categoryCount++] = category;
+            codeById[id] = categoryCount;
+        }
+        return codeById[id] - 1;
+    }
+
+    private Category categoryOf(int code) {
+        if (code < 0 || code >= categoryCount) {
+            throw new IllegalArgumentException("Unknown category code: " + code);
+        }
+        return categoriesByCode[code];
+    }
+
+    private static void checkVersion(byte version) {
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported product format version: " + version);
+        }
+    }
+
+    /**
+     * {@code value} with a scale between 0 and 127 and an unscaled value that fits a long. A
+     * negative scale is always integral, so 1E+3 is written as 1000; it decodes equal by
+     * {@code compareTo}, not by {@code equals}.
+     */
+    private static BigDecimal fitted(BigDecimal value, String what) {
+        BigDecimal fitted = value.scale() < 0 ? value.setScale(0) : value;
+        if (fitted.scale() > 127) {
+            throw new IllegalArgumentException(what + " scale does not fit the binary format: " + value);
+        }
+        if (fitted.unscaledValue().bitLength() > 63) {
+            throw new IllegalArgumentException(what + " does not fit the binary format: " + value);
+        }
+        return fitted;
+    }
+
+    private static int epochDayOf(LocalDate date) {
+        long day = date.toEpochDay();
+        if (day <= NO_EXPIRY || day > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Expiration date does not fit the binary format: " + date);
+        }
+        return (int) day;
+    }
+
+    // Lone surrogates become '?', like String.getBytes.
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void writeUtf8(String s, ByteBuffer buffer, int at) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put(at++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(at++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(at++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put(at++, (byte) (0xF0 | (cp >> 18)));
+                buffer.put(at++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put(at++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put(at++, (byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put(at++, (byte) '?');
+            } else {
+                buffer.put(at++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(at++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(at++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static String readUtf8(ByteBuffer buffer, int at, int length) {
+        if (at + length > buffer.limit()) {
+            throw new BufferUnderflowException();
+        }
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + at, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(at, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads fields of one encoded record straight from the buffer, without building the product.
+     * {@link #wrap} moves it to another record, so one view can walk a whole buffer.
+     */
+    public final class View {
+        private ByteBuffer buffer;
+        private int at;
+
+        private View() {
+        }
+
+        /**
+         * Points this view at the record starting at {@code offset}.
+         */
+        public View wrap(ByteBuffer buffer, int offset) {
+            if (offset + HEADER_SIZE > buffer.limit()) {
+                throw new BufferUnderflowException();
+            }
+            checkVersion(buffer.get(offset));
+            this.buffer = buffer;
+            this.at = offset;
+            if (offset + size() > buffer.limit()) {
+                throw new BufferUnderflowException();
+            }
+            return this;
+        }
+
+        /**
+         * Bytes taken by the record, so the next one starts at {@code offset + size()}.
+         */
+        public int size() {
+            return recordSize(buffer, at);
+        }
+
+        public boolean isFood() {
+            return buffer.get(at + 1) == FOOD;
+        }
+
+        public boolean isElectronics() {
+            return buffer.get(at + 1) == ELECTRONICS;
+        }
+
+        public UUID uuid() {
+            return new UUID((long) LONG.get(buffer, at + 8), (long) LONG.get(buffer, at + 16));
+        }
+
+        public boolean hasUuid(UUID id) {
+            return (long) LONG.get(buffer, at + 8) == id.getMostSignificantBits()
+                    && (long) LONG.get(buffer, at + 16) == id.getLeastSignificantBits();
+        }
+
+        public Category category() {
+            return categoryOf((int) INT.get(buffer, at + 4));
+        }
+
+        public long unscaledPrice() {
+            return (long) LONG.get(buffer, at + 24);
+        }
+
+        public int priceScale() {
+            return buffer.get(at + 2);
+        }
+
+        public BigDecimal price() {
+            return BigDecimal.valueOf(unscaledPrice(), priceScale());
+        }
+
+        public BigDecimal weight() {
+            return BigDecimal.valueOf((long) LONG.get(buffer, at + 32), buffer.get(at + 3));
+        }
+
+        /**
+         * Expiry as an epoch day; only meaningful for food, {@link Integer#MIN_VALUE} when unset.
+         */
+        public int expirationEpochDay() {
+            return (int) INT.get(buffer, at + 40);
+        }
+
+        public int warrantyMonths() {
+            return (int) INT.get(buffer, at + 40);
+        }
+
+        public String name() {
+            return readUtf8(buffer, at + HEADER_SIZE, (int) INT.get(buffer, at + 44));
+        }
+
+        public Product toProduct() {
+            int kind = buffer.get(at + 1);
+            if (kind == FOOD) {
+                int day = expirationEpochDay();
+                LocalDate expiry = day == NO_EXPIRY ? null : LocalDate.ofEpochDay(day);
+                return new FoodProduct(uuid(), name(), category(), price(), expiry, weight());
+            }
+            if (kind == ELECTRONICS) {
+                return new ElectronicsProduct(uuid(), name(), category(), price(), warrantyMonths(), weight());
+            }
+            throw new IllegalArgumentException("Unknown product kind: " + kind);
+        }
+    }
+}
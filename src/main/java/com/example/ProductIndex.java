@@ -0,0 +1,175 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bitmap indexes over the live products of the warehouse.
+ * <p>
+ * Every live product owns a slot number; slots of removed products are reused. For each
+ * {@link ProductAttribute} and each category there is a {@link CompressedBitmap} of the slots that
+ * match, so counting or listing products that combine several of them is a bitmap intersection
+ * rather than a scan. Updated from {@link ProductVersionStore} on every commit.
+ */
+final class ProductIndex implements ProductVersionStore.ChangeHandler {
+
+    private static final ProductAttribute[] ATTRIBUTES = ProductAttribute.values();
+
+    private final Map<UUID, Integer> slotById = new HashMap<>();
+    private Product[] slots = new Product[64];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextSlot;
+
+    private final CompressedBitmap live = new CompressedBitmap();
+    private final CompressedBitmap[] byAttribute = new CompressedBitmap[ATTRIBUTES.length];
+    private CompressedBitmap[] byCategory = new CompressedBitmap[0];
+    private int nonEmptyCategories;
+
+    ProductIndex() {
+        for (int i = 0; i < byAttribute.length; i++) {
+            byAttribute[i] = new CompressedBitmap();
+        }
+    }
+
+    @Override
+    public synchronized void onChange(Product before, Product after) {
+        if (before != null) {
+            unindex(before);
+        }
+        if (after != null) {
+            index(after);
+        }
+    }
+
+    /**
+     * Runs {@code reader} while no commit can change the index.
+     */
+    synchronized <T> T read(Function<ProductIndex, T> reader) {
+        return reader.apply(this);
+    }
+
+    synchronized int size() {
+        return live.cardinality();
+    }
+
+    synchronized int count(ProductAttribute attribute) {
+        return byAttribute[attribute.ordinal()].cardinality();
+    }
+
+    /**
+     * Number of categories with at least one live product.
+     */
+    synchronized int categoryCount() {
+        return nonEmptyCategories;
+    }
+
+    /**
+     * Counts live products in {@code category} (or any category when {@code null}) that have every
+     * one of the given attributes.
+     */
+    synchronized int countMatching(Category category, ProductAttribute... attributes) {
+        List<CompressedBitmap> parts = parts(category, attributes);
+        if (parts == null) return 0;
+        if (parts.size() == 1) return parts.get(0).cardinality();
+
+        CompressedBitmap acc = parts.get(0);
+        for (int i = 1; i < parts.size() - 1; i++) {
+            acc = acc.and(parts.get(i));
+        }
+        return acc.andCardinality(parts.get(parts.size() - 1));
+    }
+
+    synchronized List<Product> findMatching(Category category, ProductAttribute... attributes) {
+        List<CompressedBitmap> parts = parts(category, attributes);
+        if (parts == null) return List.of();
+
+        CompressedBitmap acc = parts.get(0);
+        for (int i = 1; i < parts.size(); i++) {
+            acc = acc.and(parts.get(i));
+        }
+        List<Product> result = new ArrayList<>(acc.cardinality());
+        acc.forEach(slot -> result.add(slots[slot]));
+        return result;
+    }
+
+    // Bitmaps to intersect, smallest first; null when the category has no live products.
+    private List<CompressedBitmap> parts(Category category, ProductAttribute... attributes) {
+        List<CompressedBitmap> parts = new ArrayList<>(attributes.length + 1);
+        if (category != null) {
+            int id = category.getId();
+            if (id >= byCategory.length || byCategory[id] == null) return null;
+            parts.add(byCategory[id]);
+        }
+        for (ProductAttribute attribute : attributes) {
+            parts.add(byAttribute[attribute.ordinal()]);
+        }
+        if (parts.isEmpty()) {
+            parts.add(live);
+        }
+        parts.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        return parts;
+    }
+
+    private void index(Product product) {
+        int slot = allocateSlot();
+        slotById.put(product.uuid(), slot);
+        slots[slot] = product;
+        live.add(slot);
+        for (ProductAttribute attribute : ATTRIBUTES) {
+            if (attribute.test(product)) {
+                byAttribute[attribute.ordinal()].add(slot);
+            }
+        }
+        CompressedBitmap category = categoryBitmap(product.getCategory().getId());
+        if (category.isEmpty()) nonEmptyCategories++;
+        category.add(slot);
+    }
+
+    private void unindex(Product product) {
+        Integer slot = slotById.remove(product.uuid());
+        if (slot == null) return;
+
+        slots[slot] = null;
+        live.remove(slot);
+        for (CompressedBitmap bitmap : byAttribute) {
+            bitmap.remove(slot);
+        }
+        CompressedBitmap category = categoryBitmap(product.getCategory().getId());
+        category.remove(slot);
+        if (category.isEmpty()) nonEmptyCategories--;
+        releaseSlot(slot);
+    }
+
+    private CompressedBitmap categoryBitmap(int id) {
+        if (id >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, Math.max(id + 1, Category.count()));
+        }
+        if (byCategory[id] == null) {
+            byCategory[id] = new CompressedBitmap();
+        }
+        return byCategory[id];
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (nextSlot == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        return nextSlot++;
+    }
+
+    private void releaseSlot(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+}
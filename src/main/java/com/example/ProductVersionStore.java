@@ -0,0 +1,344 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Multi-version product storage used by {@link Warehouse}.
+ * <p>
+ * Every write is a commit with the next version number. Each product id keeps a chain of versions,
+ * newest first, so a reader that pinned version {@code v} sees each product as it was at {@code v}
+ * while writers keep going. Writers are serialized among themselves but never wait for readers.
+ * Versions that no pinned reader can see any more are unlinked on later writes.
+ * <p>
+ * A commit is all or nothing: if a {@link ChangeHandler} throws, every change of the commit is
+ * taken back, from the handlers that already saw it and from the version chains, and the
+ * exception reaches the writer.
+ */
+final class ProductVersionStore {
+
+    private final Map<UUID, Version> heads = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final TreeMap<Long, Integer> pins = new TreeMap<>();
+    private final ArrayDeque<Superseded> superseded = new ArrayDeque<>();
+    private final List<ChangeHandler> handlers = new CopyOnWriteArrayList<>();
+
+    private volatile long committed;
+    private volatile int size;
+
+    /**
+     * Receives every change to the live products, in commit order, while the write lock is held.
+     * When a commit fails, the changes it already delivered are delivered again reversed.
+     */
+    interface ChangeHandler {
+        /**
+         * @param before the product that was live, or {@code null} when it is being added
+         * @param after  the product that is now live, or {@code null} when it was removed
+         */
+        void onChange(Product before, Product after);
+    }
+
+    /**
+     * Registers the handler between two commits: every commit is either fully visible to readers
+     * before this returns or is delivered to the handler.
+     */
+    void addHandler(ChangeHandler handler) {
+        writeLock.lock();
+        try {
+            handlers.add(handler);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void removeHandler(ChangeHandler handler) {
+        writeLock.lock();
+        try {
+            handlers.remove(handler);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs {@code action} between two commits.
+     */
+    void exclusive(Runnable action) {
+        writeLock.lock();
+        try {
+            action.run();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // === Reads ===
+
+    Product latest(UUID id) {
+        Version head = heads.get(id);
+        return head == null ? null : head.product;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long committedVersion() {
+        return committed;
+    }
+
+    /**
+     * Registers a reader at the latest committed version. Must be paired with {@link #unpin(long)}.
+     */
+    long pin() {
+        synchronized (pins) {
+            long version = committed;
+            pins.merge(version, 1, Integer::sum);
+            return version;
+        }
+    }
+
+    void unpin(long version) {
+        synchronized (pins) {
+            pins.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+        }
+        if (writeLock.tryLock()) {
+            try {
+                reclaim();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    Product read(UUID id, long version) {
+        return visible(heads.get(id), version);
+    }
+
+    List<Product> readAll(long version) {
+        List<Product> result = new ArrayList<>(size);
+        for (Version head : heads.values()) {
+            Product product = visible(head, version);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+
+    List<Product> readAll() {
+        long version = pin();
+        try {
+            return readAll(version);
+        } finally {
+            unpin(version);
+        }
+    }
+
+    // === Writes ===
+
+    /**
+     * Stores the product as the newest version for its id and returns the product it replaced.
+     */
+    Product put(Product product) {
+        writeLock.lock();
+        try {
+            Version head = heads.get(product.uuid());
+            install(product.uuid(), product, head, committed + 1);
+            publish(committed + 1);
+            return head == null ? null : head.product;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the live product with the result of {@code change}; returns {@code null} when there
+     * is nothing to replace.
+     */
+    Product replace(UUID id, UnaryOperator<Product> change) {
+        writeLock.lock();
+        try {
+            Version head = heads.get(id);
+            if (head == null || head.product == null) {
+                return null;
+            }
+            Product updated = change.apply(head.product);
+            install(id, updated, head, committed + 1);
+            publish(committed + 1);
+            return updated;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    Product remove(UUID id) {
+        writeLock.lock();
+        try {
+            Version head = heads.get(id);
+            if (head == null || head.product == null) {
+                return null;
+            }
+            install(id, null, head, committed + 1);
+            publish(committed + 1);
+            return head.product;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes every live product in a single commit and returns what was removed.
+     */
+    List<Product> clear() {
+        writeLock.lock();
+        try {
+            long commit = committed + 1;
+            List<Product> removed = new ArrayList<>(size);
+            List<Map.Entry<UUID, Version>> installed = new ArrayList<>(size);
+            try {
+                for (Map.Entry<UUID, Version> e : heads.entrySet()) {
+                    Version head = e.getValue();
+                    if (head.product != null) {
+                        install(e.getKey(), null, head, commit);
+                        installed.add(Map.entry(e.getKey(), head));
+                        removed.add(head.product);
+                    }
+                }
+            } catch (RuntimeException e) {
+                for (int i = installed.size() - 1; i >= 0; i--) {
+                    try {
+                        uninstall(installed.get(i).getKey(), installed.get(i).getValue());
+                    } catch (RuntimeException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw e;
+            }
+            publish(commit);
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Number of versions currently linked, including the live ones.
+     */
+    int retainedVersions() {
+        int count = 0;
+        for (Version head : heads.values()) {
+            for (Version v = head; v != null; v = v.previous) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Handlers go first, so a failing one leaves the version chains untouched.
+    private void install(UUID id, Product product, Version head, long commit) {
+        Product before = head == null ? null : head.product;
+        notifyHandlers(before, product);
+        heads.put(id, new Version(product, commit, head));
+        if (head != null) {
+            superseded.add(new Superseded(id, commit));
+        }
+        if (product != null && before == null) size++;
+        if (product == null && before != null) size--;
+    }
+
+    // Takes back the last unpublished install for the id, which replaced head.
+    private void uninstall(UUID id, Version head) {
+        Product after = heads.get(id).product;
+        Product before = head == null ? null : head.product;
+        if (head == null) {
+            heads.remove(id);
+        } else {
+            heads.put(id, head);
+            superseded.removeLast();
+        }
+        if (after != null && before == null) size--;
+        if (after == null && before != null) size++;
+        notifyHandlers(after, before);
+    }
+
+    private void notifyHandlers(Product before, Product after) {
+        int notified = 0;
+        try {
+            for (ChangeHandler handler : handlers) {
+                handler.onChange(before, after);
+                notified++;
+            }
+        } catch (RuntimeException e) {
+            for (int i = notified - 1; i >= 0; i--) {
+                try {
+                    handlers.get(i).onChange(after, before);
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void publish(long commit) {
+        committed = commit;
+        reclaim();
+    }
+
+    // Caller holds the write lock.
+    private void reclaim() {
+        long horizon = oldestVisibleVersion();
+        while (!superseded.isEmpty() && superseded.peek().commit() <= horizon) {
+            UUID id = superseded.poll().id();
+            Version head = heads.get(id);
+            Version keep = head;
+            while (keep != null && keep.commit > horizon) {
+                keep = keep.previous;
+            }
+            if (keep == null) {
+                continue;
+            }
+            keep.previous = null;
+            if (keep == head && head.product == null) {
+                heads.remove(id, head);
+            }
+        }
+    }
+
+    private long oldestVisibleVersion() {
+        synchronized (pins) {
+            return pins.isEmpty() ? committed : Math.min(pins.firstKey(), committed);
+        }
+    }
+
+    private static Product visible(Version version, long at) {
+        Version v = version;
+        while (v != null && v.commit > at) {
+            v = v.previous;
+        }
+        return v == null ? null : v.product;
+    }
+
+    private static final class Version {
+        private final Product product; // null marks a removal
+        private final long commit;
+        private volatile Version previous;
+
+        private Version(Product product, long commit, Version previous) {
+            this.product = product;
+            this.commit = commit;
+            this.previous = previous;
+        }
+    }
+
+    private record Superseded(UUID id, long commit) { }
+}
@@ -0,0 +1,336 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams every change of the {@link Warehouse} to {@link WarehouseReplica}s over TCP.
+ * <p>
+ * Changes are numbered and kept in a bounded in-memory log. Each replica connection has its own
+ * sender thread that ships the changes after the replica's last applied number in batches of up to
+ * {@code maxBatchSize}. A replica whose next change has already dropped out of the log (or a new one)
+ * first gets a full snapshot taken between two commits, then the changes after it. Change numbers
+ * only mean something to the primary that assigned them, so every primary has a random id that
+ * replicas send back when they reconnect; a replica coming from another primary (including this one
+ * before a restart) is sent a snapshot too. Products travel in the {@link ProductCodec} format, so
+ * only food and electronics products can be replicated: a product the codec rejects is reported to
+ * the replica with a skip frame and sent as a removal, so the replica never keeps an older version of
+ * it, and replication carries on with the next change.
+ * <p>
+ * {@link #start} binds the port, subscribes to the warehouse and starts accepting replicas.
+ */
+public class ReplicationPrimary implements AutoCloseable {
+
+    static final int MAGIC = 0x57524550; // "WREP"
+    static final int PROTOCOL_VERSION = 3;
+    static final byte BATCH = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte SKIPPED = 3;
+    static final byte UPSERT = 1;
+    static final byte REMOVE = 2;
+
+    private static final Duration HEARTBEAT = Duration.ofMillis(200);
+
+    private final Warehouse warehouse;
+    private final Clock clock;
+    private final long id = new SecureRandom().nextLong();
+    private final int logCapacity;
+    private final int maxBatchSize;
+    private final ServerSocket server;
+    private Thread acceptor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong snapshotsSent = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong productsSkipped = new AtomicLong();
+    private final WarehouseListener listener = new WarehouseListener() {
+        @Override
+        public void productAdded(Product product) {
+            append(product, null);
+        }
+
+        @Override
+        public void productRemoved(Product product) {
+            append(null, product.uuid());
+        }
+
+        @Override
+        public void productUpdated(Product before, Product after) {
+            append(after, null);
+        }
+    };
+
+    // Guarded by this. Change number s sits at log[(s - 1) % logCapacity].
+    private final Mutation[] log;
+    private long lastSequence;
+    private boolean closed;
+
+    private ReplicationPrimary(Warehouse warehouse, int logCapacity, int maxBatchSize, Clock clock) throws IOException {
+        if (logCapacity < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Log capacity and batch size must be positive.");
+        }
+        this.warehouse = warehouse;
+        this.clock = clock;
+        this.logCapacity = logCapacity;
+        this.maxBatchSize = maxBatchSize;
+        this.log = new Mutation[logCapacity];
+        this.server = new ServerSocket();
+    }
+
+    /**
+     * Listens on {@code port} of the loopback interface; 0 picks a free port.
+     */
+    public static ReplicationPrimary start(Warehouse warehouse, int port) throws IOException {
+        return start(warehouse, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 100_000, 512, Clock.systemUTC());
+    }
+
+    public static ReplicationPrimary start(Warehouse warehouse, InetSocketAddress address, int logCapacity, int maxBatchSize, Clock clock) throws IOException {
+        ReplicationPrimary primary = new ReplicationPrimary(warehouse, logCapacity, maxBatchSize, clock);
+        try {
+            primary.listen(address);
+        } catch (IOException e) {
+            primary.server.close();
+            throw e;
+        }
+        return primary;
+    }
+
+    private void listen(InetSocketAddress address) throws IOException {
+        // A restarted primary must be able to take over its port while old connections linger.
+        server.setReuseAddress(true);
+        server.bind(address);
+        warehouse.addListener(listener);
+
+        acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public InetSocketAddress address() {
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    /**
+     * Number of the latest change; a replica that applied it is up to date.
+     */
+    public synchronized long latestSequence() {
+        return lastSequence;
+    }
+
+    public int connectedReplicas() {
+        return connections.size();
+    }
+
+    public long snapshotsSent() {
+        return snapshotsSent.get();
+    }
+
+    public long batchesSent() {
+        return batchesSent.get();
+    }
+
+    /**
+     * Products left out of batches and snapshots because the codec rejected them, counted once per
+     * replica they were meant for.
+     */
+    public long productsSkipped() {
+        return productsSkipped.get();
+    }
+
+    @Override
+    public void close() {
+        warehouse.removeListener(listener);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            server.close();
+        } catch (IOException ignored) {
+            // Closing anyway.
+        }
+        // The port is only released once the thread blocked in accept() has left it.
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    private synchronized void append(Product upsert, UUID removed) {
+        lastSequence++;
+        log[(int) ((lastSequence - 1) % logCapacity)] = new Mutation(clock.millis(), upsert, removed);
+        notifyAll();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread sender = new Thread(() -> serve(socket), "replication-sender");
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                // Server socket closed.
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC || in.readInt() != PROTOCOL_VERSION) {
+                return;
+            }
+            long primaryId = in.readLong();
+            long applied = in.readLong();
+            if (primaryId != id) {
+                // Numbered by another primary: none of our changes are known to follow it.
+                applied = -1;
+            }
+
+            while (true) {
+                List<Mutation> batch = nextBatch(applied);
+                if (batch == null) {
+                    applied = sendSnapshot(out);
+                } else {
+                    sendBatch(out, applied + 1, batch);
+                    applied += batch.size();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Replica went away or we are closing; it reconnects with its last applied change.
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Changes after {@code applied}, waiting up to a heartbeat for some; {@code null} when they
+     * are no longer in the log and the replica needs a snapshot.
+     */
+    private synchronized List<Mutation> nextBatch(long applied) throws InterruptedException, IOException {
+        if (applied == lastSequence && !closed) {
+            wait(HEARTBEAT.toMillis());
+        }
+        if (closed) {
+            throw new IOException("Primary closed.");
+        }
+        long oldest = Math.max(1, lastSequence - logCapacity + 1);
+        if (applied > lastSequence || applied + 1 < oldest) {
+            return null;
+        }
+        long last = Math.min(lastSequence, applied + maxBatchSize);
+        List<Mutation> batch = new ArrayList<>((int) (last - applied));
+        for (long s = applied + 1; s <= last; s++) {
+            batch.add(log[(int) ((s - 1) % logCapacity)]);
+        }
+        return batch;
+    }
+
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        List<Product> products = new ArrayList<>();
+        long[] sequence = new long[1];
+        Warehouse.exclusive(() -> {
+            products.addAll(Warehouse.getProducts());
+            sequence[0] = latestSequence();
+        });
+        List<String> skipped = new ArrayList<>();
+        ByteBuffer payload = ProductCodec.encodeAll(products, (product, e) -> skipped.add(reason(product, e)));
+        sendSkipped(out, skipped);
+        out.writeByte(SNAPSHOT);
+        out.writeLong(id);
+        out.writeLong(sequence[0]);
+        out.writeLong(clock.millis());
+        out.writeInt(payload.remaining());
+        out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        out.flush();
+        snapshotsSent.incrementAndGet();
+        return sequence[0];
+    }
+
+    // An empty batch is a heartbeat carrying the primary's latest change number.
+    private void sendBatch(DataOutputStream out, long firstSequence, List<Mutation> batch) throws IOException {
+        List<Product> upserts = new ArrayList<>();
+        for (Mutation m : batch) {
+            if (m.upsert() != null) {
+                upserts.add(m.upsert());
+            }
+        }
+        // Encoded before anything is written; a rejected product goes out as a removal instead.
+        Set<Product> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<String> skipped = new ArrayList<>();
+        ByteBuffer payload = ProductCodec.encodeAll(upserts, (product, e) -> {
+            rejected.add(product);
+            skipped.add(reason(product, e));
+        });
+        sendSkipped(out, skipped);
+        out.writeByte(BATCH);
+        out.writeLong(firstSequence);
+        out.writeLong(latestSequence());
+        out.writeLong(batch.isEmpty() ? clock.millis() : batch.get(batch.size() - 1).commitMillis());
+        out.writeInt(batch.size());
+        for (Mutation m : batch) {
+            if (m.upsert() != null && !rejected.contains(m.upsert())) {
+                out.writeByte(UPSERT);
+            } else {
+                UUID id = m.upsert() != null ? m.upsert().uuid() : m.removed();
+                out.writeByte(REMOVE);
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+            }
+        }
+        out.writeInt(payload.remaining());
+        out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        out.flush();
+        if (!batch.isEmpty()) {
+            batchesSent.incrementAndGet();
+        }
+    }
+
+    private void sendSkipped(DataOutputStream out, List<String> reasons) throws IOException {
+        for (String reason : reasons) {
+            out.writeByte(SKIPPED);
+            out.writeUTF(reason);
+        }
+        productsSkipped.addAndGet(reasons.size());
+    }
+
+    private static String reason(Product product, RuntimeException e) {
+        return "Cannot replicate " + product.uuid() + ": " + e;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Closing anyway.
+        }
+    }
+
+    private record Mutation(long commitMillis, Product upsert, UUID removed) { }
+}
@@ -0,0 +1,128 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Batch version of {@link Shippable#weight()} and {@link Shippable#calculateShippingCost()} sums.
+ * <p>
+ * Weights of {@link FoodProduct}s and {@link ElectronicsProduct}s (exactly those classes, not
+ * subclasses) are copied once into a {@code long[]} of fixed-point values plus a {@code byte[]} of
+ * kinds, and both totals come out of a single branch-free loop over those columns, which the JIT
+ * can vectorize. The shipping rules are applied to the column sums, with the rates those classes
+ * use: food is priced per kg, so its total is the rate times the food weight; electronics cost a
+ * base price plus a surcharge above {@link ProductAttribute#HEAVY_THRESHOLD}, so only the counts
+ * matter. Results equal the per-item {@code BigDecimal} sums, scale included. Other
+ * {@code Shippable}s, and weights too large for a {@code long}, fall back to calling the items one
+ * by one.
+ */
+public final class ShippingCosts {
+
+    private static final byte OTHER = 0;
+    private static final byte FOOD = 1;
+    private static final byte ELECTRONICS = 2;
+
+    private static final long FOOD_RATE = FoodProduct.SHIPPING_RATE.longValueExact();
+    private static final long ELECTRONICS_BASE = ElectronicsProduct.SHIPPING_BASE.longValueExact();
+    private static final long ELECTRONICS_HEAVY_SURCHARGE = ElectronicsProduct.HEAVY_SURCHARGE.longValueExact();
+    private static final BigDecimal HEAVY_THRESHOLD = ProductAttribute.HEAVY_THRESHOLD;
+
+    private ShippingCosts() {
+    }
+
+    public record Totals(BigDecimal totalWeight, BigDecimal totalShippingCost) { }
+
+    public static Totals totals(List<? extends Shippable> items) {
+        int n = items.size();
+
+        // Pass 1: the decimal scale that fits every weight exactly.
+        int weightScale = 0;
+        int foodScale = 0;
+        for (Shippable item : items) {
+            BigDecimal w = item.weight();
+            if (w != null) {
+                weightScale = Math.max(weightScale, w.scale());
+                if (item.getClass() == FoodProduct.class) {
+                    foodScale = Math.max(foodScale, w.scale());
+                }
+            }
+        }
+
+        // Pass 2: copy into primitive columns.
+        long[] weights = new long[n];
+        byte[] kinds = new byte[n];
+        BigDecimal otherCost = BigDecimal.ZERO;
+        boolean hasOther = false;
+        long limit = Long.MAX_VALUE / Math.max(1, n) / FOOD_RATE;
+        try {
+            for (int i = 0; i < n; i++) {
+                Shippable item = items.get(i);
+                BigDecimal w = item.weight();
+                long units = w == null ? 0 : w.setScale(weightScale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+                if (units > limit || units < 0) {
+                    return scalarTotals(items);
+                }
+                weights[i] = units;
+                // Exact classes only: a subclass may override calculateShippingCost().
+                if (item.getClass() == FoodProduct.class) {
+                    kinds[i] = FOOD;
+                } else if (item.getClass() == ElectronicsProduct.class) {
+                    kinds[i] = ELECTRONICS;
+                } else {
+                    kinds[i] = OTHER;
+                    otherCost = otherCost.add(item.calculateShippingCost());
+                    hasOther = true;
+                }
+            }
+        } catch (ArithmeticException e) {
+            return scalarTotals(items);
+        }
+
+        long heavyUnits = HEAVY_THRESHOLD.setScale(weightScale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+
+        // Pass 3: one loop over the columns.
+        long totalUnits = 0;
+        long foodUnits = 0;
+        long electronics = 0;
+        long heavyElectronics = 0;
+        for (int i = 0; i < n; i++) {
+            long w = weights[i];
+            byte kind = kinds[i];
+            long isFood = kind == FOOD ? 1 : 0;
+            long isElectronics = kind == ELECTRONICS ? 1 : 0;
+            long isHeavy = w > heavyUnits ? 1 : 0;
+            totalUnits += w;
+            foodUnits += w * isFood;
+            electronics += isElectronics;
+            heavyElectronics += isElectronics & isHeavy;
+        }
+
+        BigDecimal totalWeight = BigDecimal.valueOf(totalUnits, weightScale);
+        BigDecimal foodCost = BigDecimal.valueOf(foodUnits * FOOD_RATE, weightScale)
+                .setScale(foodScale, RoundingMode.UNNECESSARY);
+        BigDecimal electronicsCost = BigDecimal.valueOf(
+                electronics * ELECTRONICS_BASE + heavyElectronics * ELECTRONICS_HEAVY_SURCHARGE);
+
+        BigDecimal totalCost = foodCost.add(electronicsCost);
+        if (hasOther) {
+            totalCost = totalCost.add(otherCost);
+        }
+        return new Totals(totalWeight, totalCost);
+    }
+
+    /**
+     * The per-item path: sums of {@code weight()} and {@code calculateShippingCost()}.
+     */
+    static Totals scalarTotals(List<? extends Shippable> items) {
+        BigDecimal totalWeight = BigDecimal.ZERO;
+        BigDecimal totalCost = BigDecimal.ZERO;
+        for (Shippable item : items) {
+            if (item.weight() != null) {
+                totalWeight = totalWeight.add(item.weight());
+            }
+            totalCost = totalCost.add(item.calculateShippingCost());
+        }
+        return new Totals(totalWeight, totalCost);
+    }
+}
@@ -0,0 +1,334 @@
+package com.example;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Packs shippable items into as few {@link WarehouseAnalyzer.ShippingGroup}s as the weight limit
+ * allows, searching in parallel for a fixed wall-clock budget.
+ * <p>
+ * Every item's shipping cost depends only on the item itself, so the total cost of a plan is the
+ * same however items are grouped; what a better plan saves is shipments. The planner starts from
+ * first-fit decreasing and then runs one large-neighbourhood search per pool thread: empty a few
+ * groups, put their items back best-fit, keep the result if it uses no more groups. It stops at the
+ * budget or as soon as a plan reaches the lower bound.
+ */
+public class ShippingPlanner {
+
+    // Weights are compared as longs at this many decimals at most; finer values are rounded up.
+    private static final int MAX_SCALE = 6;
+
+    private final ForkJoinPool pool;
+    private final Duration timeBudget;
+
+    public ShippingPlanner(Duration timeBudget) {
+        this(ForkJoinPool.commonPool(), timeBudget);
+    }
+
+    public ShippingPlanner(ForkJoinPool pool, Duration timeBudget) {
+        this.pool = Objects.requireNonNull(pool, "Pool cannot be null.");
+        if (timeBudget == null || timeBudget.isNegative()) {
+            throw new IllegalArgumentException("Time budget cannot be negative.");
+        }
+        this.timeBudget = timeBudget;
+    }
+
+    public ShippingPlan plan(List<? extends Shippable> items, BigDecimal maxWeightPerGroup) {
+        if (maxWeightPerGroup == null || maxWeightPerGroup.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Max weight per group must be positive.");
+        }
+        long deadline = System.nanoTime() + timeBudget.toNanos();
+
+        int scale = scaleOf(items, maxWeightPerGroup);
+        long capacity = Math.max(1, maxWeightPerGroup.setScale(scale, RoundingMode.FLOOR).unscaledValue().longValueExact());
+
+        // Items heavier than a whole group always travel alone and take no part in the search.
+        List<Shippable> fitting = new ArrayList<>();
+        List<WarehouseAnalyzer.ShippingGroup> groups = new ArrayList<>();
+        for (Shippable item : items) {
+            if (weightOf(item).compareTo(maxWeightPerGroup) > 0) {
+                groups.add(new WarehouseAnalyzer.ShippingGroup(List.of(item)));
+            } else {
+                fitting.add(item);
+            }
+        }
+        int oversized = groups.size();
+
+        long[] weights = new long[fitting.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weightOf(fitting.get(i)).setScale(scale, RoundingMode.CEILING).unscaledValue().longValueExact();
+        }
+        int lowerBound = lowerBound(weights, capacity);
+
+        Packing best = Packing.firstFitDecreasing(weights, capacity);
+        if (best.binCount > lowerBound && System.nanoTime() < deadline) {
+            best = search(best, lowerBound, deadline);
+        }
+
+        for (int bin = 0; bin < best.binCount; bin++) {
+            List<Shippable> members = new ArrayList<>(best.memberCount[bin]);
+            for (int k = 0; k < best.memberCount[bin]; k++) {
+                members.add(fitting.get(best.members[bin][k]));
+            }
+            groups.add(new WarehouseAnalyzer.ShippingGroup(members));
+        }
+
+        BigDecimal totalCost = groups.stream()
+                .map(WarehouseAnalyzer.ShippingGroup::getTotalShippingCost)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return new ShippingPlan(List.copyOf(groups), totalCost, lowerBound + oversized);
+    }
+
+    private Packing search(Packing start, int lowerBound, long deadline) {
+        int workers = Math.max(1, pool.getParallelism());
+        SplittableRandom seeds = new SplittableRandom(start.weights.length * 31L + start.binCount);
+        List<ForkJoinTask<Packing>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            SplittableRandom random = seeds.split();
+            tasks.add(pool.submit(() -> improve(start.copy(), random, lowerBound, deadline)));
+        }
+
+        Packing best = start;
+        for (ForkJoinTask<Packing> task : tasks) {
+            Packing candidate = task.join();
+            if (candidate.binCount < best.binCount) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static Packing improve(Packing current, SplittableRandom random, int lowerBound, long deadline) {
+        Packing best = current.copy();
+        int[] removed = new int[current.weights.length];
+        while (best.binCount > lowerBound && System.nanoTime() < deadline) {
+            Packing candidate = current.copy();
+            int destroy = Math.min(candidate.binCount, 2 + random.nextInt(3));
+            int removedCount = candidate.destroy(destroy, random, removed);
+            candidate.repair(removed, removedCount, random);
+
+            // Plateau moves are accepted as long as loads get more uneven, which tends to drain a group.
+            if (candidate.binCount < current.binCount
+                    || (candidate.binCount == current.binCount && candidate.squaredLoad() >= current.squaredLoad())) {
+                current = candidate;
+                if (current.binCount < best.binCount) {
+                    best = current.copy();
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The larger of the total-weight bound and the number of items that cannot share a group
+     * with each other because each is heavier than half of it.
+     */
+    static int lowerBound(long[] weights, long capacity) {
+        long total = 0;
+        int overHalf = 0;
+        for (long w : weights) {
+            total += w;
+            if (2 * w > capacity) overHalf++;
+        }
+        int byWeight = (int) ((total + capacity - 1) / capacity);
+        return Math.max(byWeight, overHalf);
+    }
+
+    private static int scaleOf(List<? extends Shippable> items, BigDecimal maxWeightPerGroup) {
+        int scale = Math.max(0, maxWeightPerGroup.stripTrailingZeros().scale());
+        for (Shippable item : items) {
+            scale = Math.max(scale, weightOf(item).stripTrailingZeros().scale());
+        }
+        return Math.min(scale, MAX_SCALE);
+    }
+
+    private static BigDecimal weightOf(Shippable item) {
+        return item.weight() != null ? item.weight() : BigDecimal.ZERO;
+    }
+
+    /**
+     * Result of {@link ShippingPlanner#plan}.
+     *
+     * @param lowerBound no plan can use fewer groups than this
+     */
+    public record ShippingPlan(
+            List<WarehouseAnalyzer.ShippingGroup> groups,
+            BigDecimal totalShippingCost,
+            int lowerBound
+    ) {
+        public int groupCount() {
+            return groups.size();
+        }
+
+        /**
+         * Relative distance to the lower bound: 0 means the plan is provably optimal.
+         */
+        public double gap() {
+            return lowerBound == 0 ? 0.0 : (groupCount() - lowerBound) / (double) lowerBound;
+        }
+    }
+
+    /**
+     * Assignment of item indexes to bins, with loads kept per bin.
+     */
+    private static final class Packing {
+        final long[] weights;
+        final long capacity;
+        int[][] members;
+        int[] memberCount;
+        long[] load;
+        int binCount;
+
+        private Packing(long[] weights, long capacity, int bins) {
+            this.weights = weights;
+            this.capacity = capacity;
+            this.members = new int[bins][];
+            this.memberCount = new int[bins];
+            this.load = new long[bins];
+        }
+
+        static Packing firstFitDecreasing(long[] weights, long capacity) {
+            Integer[] order = new Integer[weights.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(weights[b], weights[a]));
+
+            Packing packing = new Packing(weights, capacity, Math.max(1, weights.length));
+            for (int item : order) {
+                int bin = 0;
+                while (bin < packing.binCount && packing.load[bin] + weights[item] > capacity) {
+                    bin++;
+                }
+                if (bin == packing.binCount) packing.openBin();
+                packing.place(item, bin);
+            }
+            return packing;
+        }
+
+        Packing copy() {
+            Packing copy = new Packing(weights, capacity, members.length);
+            for (int bin = 0; bin < binCount; bin++) {
+                copy.members[bin] = Arrays.copyOf(members[bin], members[bin].length);
+            }
+            copy.memberCount = Arrays.copyOf(memberCount, memberCount.length);
+            copy.load = Arrays.copyOf(load, load.length);
+            copy.binCount = binCount;
+            return copy;
+        }
+
+        /**
+         * Empties the lightest bin plus {@code count - 1} random others into {@code removed}.
+         */
+        int destroy(int count, SplittableRandom random, int[] removed) {
+            int lightest = 0;
+            for (int bin = 1; bin < binCount; bin++) {
+                if (load[bin] < load[lightest]) lightest = bin;
+            }
+            boolean[] chosen = new boolean[binCount];
+            chosen[lightest] = true;
+            for (int picked = 1; picked < count; ) {
+                int bin = random.nextInt(binCount);
+                if (!chosen[bin]) {
+                    chosen[bin] = true;
+                    picked++;
+                }
+            }
+
+            int removedCount = 0;
+            for (int bin = binCount - 1; bin >= 0; bin--) {
+                if (chosen[bin]) {
+                    for (int k = 0; k < memberCount[bin]; k++) {
+                        removed[removedCount++] = members[bin][k];
+                    }
+                    dropBin(bin);
+                }
+            }
+            return removedCount;
+        }
+
+        /**
+         * Puts items back, each into the fullest bin that still has room. Usually heaviest first;
+         * sometimes in random order, since best-fit decreasing alone would keep rebuilding the
+         * same groups.
+         */
+        void repair(int[] removed, int removedCount, SplittableRandom random) {
+            Integer[] order = new Integer[removedCount];
+            for (int i = 0; i < removedCount; i++) order[i] = removed[i];
+            if (random.nextInt(3) == 0) {
+                for (int i = removedCount - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    Integer t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                }
+            } else {
+                Arrays.sort(order, (a, b) -> Long.compare(weights[b], weights[a]));
+            }
+
+            for (int item : order) {
+                int bestBin = -1;
+                long bestResidual = Long.MAX_VALUE;
+                for (int bin = 0; bin < binCount; bin++) {
+                    long residual = capacity - load[bin] - weights[item];
+                    if (residual >= 0 && residual < bestResidual) {
+                        bestResidual = residual;
+                        bestBin = bin;
+                    }
+                }
+                if (bestBin < 0) {
+                    openBin();
+                    bestBin = binCount - 1;
+                }
+                place(item, bestBin);
+            }
+        }
+
+        double squaredLoad() {
+            double sum = 0;
+            for (int bin = 0; bin < binCount; bin++) {
+                double l = load[bin];
+                sum += l * l;
+            }
+            return sum;
+        }
+
+        private void openBin() {
+            if (binCount == members.length) {
+                int grown = binCount * 2;
+                members = Arrays.copyOf(members, grown);
+                memberCount = Arrays.copyOf(memberCount, grown);
+                load = Arrays.copyOf(load, grown);
+            }
+            members[binCount] = new int[4];
+            memberCount[binCount] = 0;
+            load[binCount] = 0;
+            binCount++;
+        }
+
+        private void place(int item, int bin) {
+            if (memberCount[bin] == members[bin].length) {
+                members[bin] = Arrays.copyOf(members[bin], memberCount[bin] * 2);
+            }
+            members[bin][memberCount[bin]++] = item;
+            load[bin] += weights[item];
+        }
+
+        // Moves the last bin into the freed position.
+        private void dropBin(int bin) {
+            int last = --binCount;
+            members[bin] = members[last];
+            memberCount[bin] = memberCount[last];
+            load[bin] = load[last];
+            members[last] = null;
+            memberCount[last] = 0;
+            load[last] = 0;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Product storage that keeps only the recently used products on the heap and spills the rest to
+ * a segment file on local disk.
+ * <p>
+ * The hot tier holds up to {@code hotCapacity} products in least-recently-used order. Adding a
+ * product or reading a cold one puts it in the hot tier, and whatever falls out of it is appended
+ * to the segment in the {@link ProductCodec} format. Only the offset of each cold product stays
+ * on the heap. Replaced and promoted records leave garbage in the segment, which is rewritten
+ * once the garbage outweighs the live records. {@link #scan} and {@link #getProducts} walk the cold
+ * tier front to back in large reads without promoting anything, so a full pass neither flushes the
+ * hot tier nor holds the cold one on the heap. Only food and electronics products the codec can
+ * encode are stored; anything else is rejected when it is put, and the record encoded then is the
+ * one spilled, so a product never fails to spill. The segment is scratch space: it is deleted on
+ * close.
+ * <p>
+ * The store is not wired into {@link Warehouse}, whose indexes, rankings and replication log refer
+ * to every live product; it is for catalogs kept outside the warehouse.
+ */
+public class TieredProductStore implements AutoCloseable {
+
+    private static final int SCAN_CHUNK = 1 << 20;
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final Path segment;
+    private final int hotCapacity;
+    private final ProductCodec codec = new ProductCodec();
+
+    // Guarded by this.
+    private final LinkedHashMap<UUID, Hot> hot = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<UUID, Long> coldOffsets = new HashMap<>();
+    private FileChannel channel;
+    private long segmentEnd;
+    private long liveColdBytes;
+    private long hotHits;
+    private long coldHits;
+    private long misses;
+    private long spills;
+    private long compactions;
+    private boolean scanning;
+
+    /**
+     * @param segment     file the cold tier is spilled to; replaced if it exists
+     * @param hotCapacity most products kept on the heap
+     */
+    public TieredProductStore(Path segment, int hotCapacity) throws IOException {
+        if (hotCapacity < 1) {
+            throw new IllegalArgumentException("Hot capacity must be positive.");
+        }
+        this.segment = segment;
+        this.hotCapacity = hotCapacity;
+        this.channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Adds or replaces the product with the same id; it starts out hot.
+     *
+     * @throws IllegalArgumentException if the product cannot be written to the segment
+     */
+    public synchronized void put(Product product) {
+        checkNotScanning();
+        // A subclass would be read back as its parent.
+        if (product.getClass() != FoodProduct.class && product.getClass() != ElectronicsProduct.class) {
+            throw new IllegalArgumentException("Only food and electronics products can be stored.");
+        }
+        // Encoding fails on values the format cannot hold; find out before storing.
+        ByteBuffer record = encode(product);
+        dropCold(product.uuid());
+        hot.put(product.uuid(), new Hot(product, record));
+        evict();
+    }
+
+    /**
+     * The product with {@code id}, read from disk and made hot if it was cold.
+     */
+    public synchronized Optional<Product> getProductById(UUID id) {
+        checkNotScanning();
+        Hot entry = hot.get(id);
+        if (entry != null) {
+            hotHits++;
+            return Optional.of(entry.product());
+        }
+        Long offset = coldOffsets.get(id);
+        if (offset == null) {
+            misses++;
+            return Optional.empty();
+        }
+        coldHits++;
+        ByteBuffer record = readAt(offset);
+        Product product = codec.decode(record.duplicate());
+        dropCold(id);
+        hot.put(id, new Hot(product, record));
+        evict();
+        return Optional.of(product);
+    }
+
+    public synchronized boolean remove(UUID id) {
+        checkNotScanning();
+        return hot.remove(id) != null || dropCold(id);
+    }
+
+    public synchronized int size() {
+        return hot.size() + coldOffsets.size();
+    }
+
+    /**
+     * Passes every product to {@code action}: the hot ones first, then the cold ones in segment
+     * order. Cold products are decoded for the call only and stay cold. The store is locked for the
+     * whole scan; {@code action} may read {@link #size()} and {@link #stats()}, but any other use of
+     * the store from inside it throws {@link IllegalStateException}.
+     */
+    public synchronized void scan(Consumer<? super Product> action) {
+        checkNotScanning();
+        scanning = true;
+        try {
+            for (Hot entry : new ArrayList<>(hot.values())) {
+                action.accept(entry.product());
+            }
+            scanCold((id, offset, record) -> action.accept(codec.decode(record)));
+        } finally {
+            scanning = false;
+        }
+    }
+
+    /**
+     * The products as they are now: the hot ones, then the cold ones in segment order. Only the hot
+     * products and the offsets of the cold ones are copied. Every iteration reads the cold records
+     * again in large sequential reads and decodes them one at a time, without promoting them.
+     * Records are never overwritten, so the view keeps showing this moment while the store
+     * changes, until a compaction moves them; iterating after that throws
+     * {@link ConcurrentModificationException}.
+     */
+    public synchronized Collection<Product> getProducts() {
+        checkNotScanning();
+        List<Product> hotNow = new ArrayList<>(hot.size());
+        for (Hot entry : hot.values()) {
+            hotNow.add(entry.product());
+        }
+        long[] offsets = coldOffsets.values().stream().mapToLong(Long::longValue).sorted().toArray();
+        return new ProductsView(hotNow, offsets, compactions);
+    }
+
+    /**
+     * An analyzer over the store's products. Each query iterates a fresh {@link #getProducts} view,
+     * reading the segment once per pass instead of loading the cold tier.
+     */
+    public WarehouseAnalyzer analyzer() {
+        return new WarehouseAnalyzer(this::getProducts);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hot.size(), coldOffsets.size(), hotHits, coldHits, misses, spills, segmentEnd, liveColdBytes, compactions);
+    }
+
+    /**
+     * Closes and deletes the segment.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        checkNotScanning();
+        hot.clear();
+        coldOffsets.clear();
+        channel.close();
+        Files.deleteIfExists(segment);
+    }
+
+    // A product leaves the hot tier only once it is on disk, so a failed write loses nothing.
+    private void evict() {
+        while (hot.size() > hotCapacity) {
+            Hot eldest = hot.values().iterator().next();
+            spill(eldest);
+            hot.remove(eldest.product().uuid());
+        }
+    }
+
+    private void spill(Hot entry) {
+        ByteBuffer record = entry.record().duplicate();
+        long offset = segmentEnd;
+        writeFully(channel, record, offset);
+        segmentEnd += record.capacity();
+        liveColdBytes += record.capacity();
+        coldOffsets.put(entry.product().uuid(), offset);
+        spills++;
+    }
+
+    private ByteBuffer encode(Product product) {
+        ByteBuffer record = ByteBuffer.allocate(ProductCodec.encodedSize(product));
+        codec.encode(product, record);
+        return record.flip();
+    }
+
+    private void checkNotScanning() {
+        if (scanning) {
+            throw new IllegalStateException("Only size() and stats() can be used from inside a scan.");
+        }
+    }
+
+    private boolean dropCold(UUID id) {
+        Long offset = coldOffsets.remove(id);
+        if (offset == null) return false;
+        liveColdBytes -= recordSizeAt(offset);
+        long garbage = segmentEnd - liveColdBytes;
+        if (garbage > MIN_COMPACTION_BYTES && garbage > liveColdBytes) {
+            compact();
+        }
+        return true;
+    }
+
+    private ByteBuffer readAt(long offset) {
+        ByteBuffer record = ByteBuffer.allocate(recordSizeAt(offset));
+        readFully(record, offset);
+        return record.flip();
+    }
+
+    private int recordSizeAt(long offset) {
+        ByteBuffer header = ByteBuffer.allocate(ProductCodec.HEADER_SIZE);
+        readFully(header, offset);
+        return ProductCodec.recordSize(header, 0);
+    }
+
+    // Copies the live cold records to a fresh segment, in their current order.
+    private void compact() {
+        Path next = segment.resolveSibling(segment.getFileName() + ".compacting");
+        try (FileChannel out = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            Map<UUID, Long> moved = new HashMap<>(coldOffsets.size() * 2);
+            long[] end = new long[1];
+            scanCold((id, offset, record) -> {
+                moved.put(id, end[0]);
+                int size = record.remaining();
+                writeFully(out, record, end[0]);
+                end[0] += size;
+            });
+            out.force(false);
+            channel.close();
+            Files.move(next, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            coldOffsets.putAll(moved);
+            segmentEnd = end[0];
+            liveColdBytes = end[0];
+            compactions++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the segment front to back and passes each live record to {@code action}, positioned at
+     * the record and limited to it.
+     */
+    private void scanCold(ColdRecordAction action) {
+        if (coldOffsets.isEmpty()) return;
+        ProductCodec.View view = codec.view();
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK);
+        long chunkStart = 0;
+        chunk.limit(0);
+        while (chunkStart + chunk.limit() < segmentEnd || chunk.hasRemaining()) {
+            int at = chunk.position();
+            int available = chunk.limit() - at;
+            if (available < ProductCodec.HEADER_SIZE || available < ProductCodec.recordSize(chunk, at)) {
+                // Move the partial record to the front and read more behind it.
+                int needed = available < ProductCodec.HEADER_SIZE ? ProductCodec.HEADER_SIZE : ProductCodec.recordSize(chunk, at);
+                if (needed > chunk.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(needed);
+                    bigger.put(chunk);
+                    chunk = bigger;
+                } else {
+                    chunk.compact();
+                }
+                chunkStart += at;
+                long fileAt = chunkStart + chunk.position();
+                int want = (int) Math.min(chunk.remaining(), segmentEnd - fileAt);
+                if (want <= 0) {
+                    throw new UncheckedIOException(new IOException("Segment ends inside a record at " + chunkStart + "."));
+                }
+                chunk.limit(chunk.position() + want);
+                readFully(chunk, fileAt);
+                chunk.flip();
+                continue;
+            }
+            view.wrap(chunk, at);
+            int size = view.size();
+            UUID id = view.uuid();
+            Long live = coldOffsets.get(id);
+            if (live != null && live == chunkStart + at) {
+                ByteBuffer record = chunk.duplicate();
+                record.limit(at + size);
+                action.accept(id, live, record);
+            }
+            chunk.position(at + size);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) {
+        try {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, offset);
+                if (read < 0) {
+                    throw new IOException("Segment ends inside a record at " + offset + ".");
+                }
+                offset += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer, long offset) {
+        try {
+            while (buffer.hasRemaining()) {
+                offset += target.write(buffer, offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface ColdRecordAction {
+        void accept(UUID id, long offset, ByteBuffer record);
+    }
+
+    // The record is kept so a product is encoded once, when it is put or read back, not again on spill.
+    private record Hot(Product product, ByteBuffer record) { }
+
+    private final class ProductsView extends AbstractCollection<Product> {
+        private final List<Product> hotProducts;
+        private final long[] coldOffsets;
+        private final long compactionsAtStart;
+
+        ProductsView(List<Product> hotProducts, long[] coldOffsets, long compactionsAtStart) {
+            this.hotProducts = hotProducts;
+            this.coldOffsets = coldOffsets;
+            this.compactionsAtStart = compactionsAtStart;
+        }
+
+        @Override
+        public int size() {
+            return hotProducts.size() + coldOffsets.length;
+        }
+
+        @Override
+        public Iterator<Product> iterator() {
+            return new Iterator<>() {
+                private int next;
+                private ByteBuffer chunk = ByteBuffer.allocate(0);
+                private long chunkStart;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size();
+                }
+
+                @Override
+                public Product next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (next < hotProducts.size()) {
+                        return hotProducts.get(next++);
+                    }
+                    long offset = coldOffsets[next++ - hotProducts.size()];
+                    synchronized (TieredProductStore.this) {
+                        if (compactions != compactionsAtStart) {
+                            throw new ConcurrentModificationException("The segment was compacted while it was read.");
+                        }
+                        long at = offset - chunkStart;
+                        if (at + ProductCodec.HEADER_SIZE > chunk.limit()
+                                || at + ProductCodec.recordSize(chunk, (int) at) > chunk.limit()) {
+                            fill(offset);
+                            at = 0;
+                        }
+                        // The codec's category dictionary is only safe to read under the lock.
+                        return codec.decode(chunk.duplicate().position((int) at));
+                    }
+                }
+
+                // Reads from the record at offset onwards, at least the whole record.
+                private void fill(long offset) {
+                    int size = recordSizeAt(offset);
+                    if (chunk.capacity() < Math.max(SCAN_CHUNK, size)) {
+                        chunk = ByteBuffer.allocate(Math.max(SCAN_CHUNK, size));
+                    }
+                    chunk.clear().limit((int) Math.min(chunk.capacity(), segmentEnd - offset));
+                    readFully(chunk, offset);
+                    chunk.flip();
+                    chunkStart = offset;
+                }
+            };
+        }
+    }
+
+    /**
+     * Counters since the store was opened.
+     *
+     * @param hotHits       lookups answered from the heap
+     * @param coldHits      lookups read from the segment
+     * @param misses        lookups of ids not stored
+     * @param spills        products written to the segment
+     * @param segmentBytes  size of the segment, garbage included
+     * @param liveColdBytes bytes of the segment holding current cold products
+     */
+    public record Stats(
+            int hotProducts,
+            int coldProducts,
+            long hotHits,
+            long coldHits,
+            long misses,
+            long spills,
+            long segmentBytes,
+            long liveColdBytes,
+            long compactions
+    ) {
+        /**
+         * Share of found products that were already hot; 0 before any lookup.
+         */
+        public double hotHitRate() {
+            long found = hotHits + coldHits;
+            return found == 0 ? 0 : (double) hotHits / found;
+        }
+    }
+}
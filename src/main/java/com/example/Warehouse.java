@@ -6,12 +6,27 @@ import com.example.Category;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 /// /
 
 public class Warehouse {
     private static Warehouse instance;
-    private static final Map<UUID, Product> products = new HashMap<>();
+    private static final ProductVersionStore products = new ProductVersionStore();
+    private static final ProductIndex index = new ProductIndex();
+    private static final PriceSketchIndex priceSketches = new PriceSketchIndex(category -> index.findMatching(category));
+    private static final PriceRanking priceRanking = new PriceRanking();
+    private static final CategoryRollups categoryRollups = new CategoryRollups();
+    private static final Map<WarehouseListener, ProductVersionStore.ChangeHandler> listeners = new ConcurrentHashMap<>();
+
+    static {
+        products.addHandler(index);
+        products.addHandler(priceSketches);
+        products.addHandler(priceRanking);
+        products.addHandler(categoryRollups);
+    }
+
     private final String name;
 
     private Warehouse(String name) {
@@ -39,14 +54,18 @@ public class Warehouse {
 
 
     public boolean isEmpty() {
-        return products.isEmpty();
+        return products.size() == 0;
     }
 
 
     public void addProduct(Product product) {
         if (product == null)
             throw new IllegalArgumentException("Product cannot be null.");
-        products.put(product.uuid(), product);
+        if (product.uuid() == null)
+            throw new IllegalArgumentException("Product id cannot be null.");
+        if (product.getCategory() == null)
+            throw new IllegalArgumentException("Product category cannot be null.");
+        products.put(product);
     }
 
 
@@ -56,28 +75,43 @@ public class Warehouse {
 
 
     public Optional<Product> getProductById(UUID id) {
-        return Optional.ofNullable(products.get(id));
+        return Optional.ofNullable(products.latest(id));
     }
 
 
     public static List<Product> getProducts() {
 
 
-        return Collections.unmodifiableList(new ArrayList<>(products.values()));
+        return Collections.unmodifiableList(products.readAll());
     }
 
     public Map<Category, List<Product>> getProductsGroupedByCategories() {
-        if (products.isEmpty()) return Collections.emptyMap();
+        List<Product> items = products.readAll();
+        if (items.isEmpty()) return Collections.emptyMap();
 
-        return products.values().stream()
-                .collect(Collectors.groupingBy(Product::getCategory,
-                        Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+        List<List<Product>> byCategoryId = new ArrayList<>(Collections.nCopies(Category.count(), null));
+        int groups = 0;
+        for (Product p : items) {
+            int id = p.getCategory().getId();
+            while (byCategoryId.size() <= id) {
+                byCategoryId.add(null);
+            }
+            List<Product> group = byCategoryId.get(id);
+            if (group == null) {
+                group = new ArrayList<>();
+                byCategoryId.set(id, group);
+                groups++;
+            }
+            group.add(p);
+        }
+        byCategoryId.replaceAll(group -> group == null ? null : Collections.unmodifiableList(group));
+        return new CategoryGroups(byCategoryId, groups);
     }
 
 
     public List<Perishable> expiredProducts() {
         LocalDate now = LocalDate.now();
-        return products.values().stream()
+        return products.readAll().stream()
                 .filter(p -> p instanceof Perishable per
                         && per.expirationDate() != null
                         && per.expirationDate().isBefore(now))
@@ -86,23 +120,245 @@ public class Warehouse {
     }
 
     public static List<Shippable> shippableProducts() {
-        return products.values().stream()
+        return products.readAll().stream()
                 .filter(p -> p instanceof Shippable)
                 .map(p -> (Shippable) p)
                 .toList();
     }
 
     public void updateProductPrice(UUID id, BigDecimal newPrice) {
-        Product product = products.get(id);
-        if (product == null)
+        Product updated = products.replace(id, p -> p.withPrice(newPrice));
+        if (updated == null)
             throw new NoSuchElementException("Product not found with id: " + id);
-        product.setPrice(newPrice);
     }
+
+    /**
+     * Counts products in the category (any category when {@code null}) that have all the given
+     * attributes, using the bitmap indexes instead of scanning.
+     */
+    public int countMatching(Category category, ProductAttribute... attributes) {
+        return betweenCommits(() -> index.countMatching(category, attributes));
+    }
+
+    /**
+     * Lists products in the category (any category when {@code null}) that have all the given
+     * attributes, using the bitmap indexes instead of scanning.
+     */
+    public List<Product> findMatching(Category category, ProductAttribute... attributes) {
+        return betweenCommits(() -> index.findMatching(category, attributes));
+    }
+
+    static <T> T readIndex(Function<ProductIndex, T> reader) {
+        return betweenCommits(() -> index.read(reader));
+    }
+
+    /**
+     * Sets the size of the price sketches kept per category and rebuilds them.
+     */
+    public void configurePriceSketches(PriceSketch.Accuracy accuracy) {
+        Objects.requireNonNull(accuracy, "Accuracy cannot be null.");
+        products.exclusive(() -> priceSketches.configure(accuracy));
+    }
+
+    static PriceSketchIndex priceSketches() {
+        return priceSketches;
+    }
+
+    static PriceRanking priceRanking() {
+        return priceRanking;
+    }
+
+    static CategoryRollups categoryRollups() {
+        return categoryRollups;
+    }
+
+    /**
+     * Runs {@code action} between two commits, with every earlier commit delivered to listeners.
+     */
+    static void exclusive(Runnable action) {
+        products.exclusive(action);
+    }
+
+    /**
+     * Reads the components kept up to date by the store between two commits. They are updated
+     * one product at a time, so a commit changing many products, such as {@link #clearProducts()},
+     * could otherwise be seen half applied.
+     */
+    static <T> T betweenCommits(Supplier<T> read) {
+        List<T> result = new ArrayList<>(1);
+        products.exclusive(() -> result.add(read.get()));
+        return result.get(0);
+    }
+
+    /**
+     * Subscribes the listener to every change committed after this call returns. Everything
+     * committed before it is already visible through {@link #getProducts()}. An exception thrown
+     * by the listener does not stop the commit or reach the writer; it goes to the writing thread's
+     * uncaught exception handler.
+     */
+    public void addListener(WarehouseListener listener) {
+        Objects.requireNonNull(listener, "Listener cannot be null.");
+        listeners.computeIfAbsent(listener, l -> {
+            ProductVersionStore.ChangeHandler handler = (before, after) -> {
+                try {
+                    if (before == null) l.productAdded(after);
+                    else if (after == null) l.productRemoved(before);
+                    else l.productUpdated(before, after);
+                } catch (RuntimeException e) {
+                    // The commit is already half applied; it must go through whatever one listener does.
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                }
+            };
+            products.addHandler(handler);
+            return handler;
+        });
+    }
+
+    public void removeListener(WarehouseListener listener) {
+        ProductVersionStore.ChangeHandler handler = listeners.remove(listener);
+        if (handler != null) {
+            products.removeHandler(handler);
+        }
+    }
+
+    /**
+     * Pins the current state of the warehouse. The snapshot keeps returning exactly that state,
+     * however long it is held and whatever is written meanwhile, until it is closed.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this, products.pin());
+    }
+
     public String getName() {
         return name;
     }
     public static void resetInstance() {
         instance = null;
     }
+
+    static int retainedVersions() {
+        return products.retainedVersions();
+    }
+
+    /**
+     * Read-only map over groups of products indexed by category id; a {@code null} group is absent.
+     */
+    private static final class CategoryGroups extends AbstractMap<Category, List<Product>> {
+        private final List<List<Product>> byCategoryId;
+        private final int size;
+
+        private CategoryGroups(List<List<Product>> byCategoryId, int size) {
+            this.byCategoryId = byCategoryId;
+            this.size = size;
+        }
+
+        @Override
+        public List<Product> get(Object key) {
+            if (!(key instanceof Category category) || category.getId() >= byCategoryId.size()) {
+                return null;
+            }
+            return byCategoryId.get(category.getId());
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Entry<Category, List<Product>>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Category, List<Product>>> iterator() {
+                    return new Iterator<>() {
+                        private int next = advance(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < byCategoryId.size();
+                        }
+
+                        @Override
+                        public Entry<Category, List<Product>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int id = next;
+                            next = advance(id + 1);
+                            return Map.entry(Category.byId(id), byCategoryId.get(id));
+                        }
+
+                        private int advance(int from) {
+                            while (from < byCategoryId.size() && byCategoryId.get(from) == null) {
+                                from++;
+                            }
+                            return from;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+
+    /**
+     * A read-only, consistent view of the warehouse at one version.
+     */
+    public static final class Snapshot implements AutoCloseable {
+        private final Warehouse warehouse;
+        private final long version;
+        private List<Product> products;
+        private boolean closed;
+
+        private Snapshot(Warehouse warehouse, long version) {
+            this.warehouse = warehouse;
+            this.version = version;
+        }
+
+        public Warehouse getWarehouse() {
+            return warehouse;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public synchronized List<Product> getProducts() {
+            ensureOpen();
+            if (products == null) {
+                products = Collections.unmodifiableList(Warehouse.products.readAll(version));
+            }
+            return products;
+        }
+
+        public Optional<Product> getProductById(UUID id) {
+            ensureOpen();
+            return Optional.ofNullable(Warehouse.products.read(id, version));
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                Warehouse.products.unpin(version);
+            }
+        }
+
+        private synchronized void ensureOpen() {
+            if (closed) {
+                throw new IllegalStateException("Snapshot is closed.");
+            }
+        }
+    }
 }
 
@@ -3,10 +3,12 @@ package com.example;
 import com.example.Category;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 //
 /**
@@ -15,10 +17,50 @@ import java.util.stream.Collectors;
 @SuppressWarnings("unused")
 public class WarehouseAnalyzer {
 
-    private final Warehouse warehouse;
+    private final Warehouse warehouse; // null when the products come from outside a warehouse
+    private final Supplier<? extends Collection<Product>> source;
+    // Reading the live warehouse, so its indexes describe the same products as the source.
+    private final boolean live;
 
     public WarehouseAnalyzer(Warehouse warehouse) {
-        this.warehouse = Objects.requireNonNull(warehouse, "Warehouse cannot be null.");
+        this(Objects.requireNonNull(warehouse, "Warehouse cannot be null."), Warehouse::getProducts, true);
+    }
+
+    /**
+     * Creates an analyzer that reads the pinned state of the snapshot for as long as it is open.
+     */
+    public WarehouseAnalyzer(Warehouse.Snapshot snapshot) {
+        this(Objects.requireNonNull(snapshot, "Snapshot cannot be null.").getWarehouse(), snapshot::getProducts);
+    }
+
+    WarehouseAnalyzer(Warehouse warehouse, Supplier<? extends Collection<Product>> source) {
+        this(Objects.requireNonNull(warehouse, "Warehouse cannot be null."), source, false);
+    }
+
+    /**
+     * Creates an analyzer over products kept outside any warehouse, such as a replica's. Each query
+     * iterates what {@code source} returns at that moment.
+     */
+    WarehouseAnalyzer(Supplier<? extends Collection<Product>> source) {
+        this(null, source, false);
+    }
+
+    private WarehouseAnalyzer(Warehouse warehouse, Supplier<? extends Collection<Product>> source, boolean live) {
+        this.warehouse = warehouse;
+        this.source = Objects.requireNonNull(source, "Product source cannot be null.");
+        this.live = live;
+    }
+
+    /**
+     * Returns an analyzer whose queries all read the products as they are right now.
+     */
+    WarehouseAnalyzer snapshot() {
+        List<Product> fixed = List.copyOf(products());
+        return new WarehouseAnalyzer(warehouse, () -> fixed, false);
+    }
+
+    private Collection<Product> products() {
+        return source.get();
     }
 
     // === Search and Filter Methods ===
@@ -31,7 +73,7 @@ public class WarehouseAnalyzer {
             throw new IllegalArgumentException("Category cannot be null.");
         }
 
-        List<Product> result = Warehouse.getProducts().stream()
+        List<Product> result = products().stream()
                 .filter(p -> p.getCategory().equals(category))
                 .collect(Collectors.toList());
 
@@ -44,7 +86,7 @@ public class WarehouseAnalyzer {
      */
     public List<Product> findProductsInPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
         List<Product> result = new ArrayList<>();
-        for (Product p : Warehouse.getProducts()) {
+        for (Product p : products()) {
             BigDecimal price = p.price();
             if (price.compareTo(minPrice) >= 0 && price.compareTo(maxPrice) <= 0) {
                 result.add(p);
@@ -61,7 +103,7 @@ public class WarehouseAnalyzer {
         LocalDate end = today.plusDays(days);
         List<Perishable> result = new ArrayList<>();
 
-        for (Product p : Warehouse.getProducts()) {
+        for (Product p : products()) {
             if (p instanceof Perishable per) {
                 LocalDate exp = per.expirationDate();
                 if (!exp.isBefore(today) && !exp.isAfter(end)) {
@@ -76,11 +118,11 @@ public class WarehouseAnalyzer {
      * Performs a case-insensitive partial name search.
      */
     public List<Product> searchProductsByName(String searchTerm) {
-        String term = searchTerm.toLowerCase(Locale.ROOT);
+        NamePool.Matcher matcher = NamePool.shared().matcher(searchTerm.toLowerCase(Locale.ROOT));
         List<Product> result = new ArrayList<>();
 
-        for (Product p : Warehouse.getProducts()) {
-            if (p.name().toLowerCase(Locale.ROOT).contains(term)) {
+        for (Product p : products()) {
+            if (matcher.matches(p.name())) {
                 result.add(p);
             }
         }
@@ -92,7 +134,7 @@ public class WarehouseAnalyzer {
      */
     public List<Product> findProductsAbovePrice(BigDecimal price) {
         List<Product> result = new ArrayList<>();
-        for (Product p : Warehouse.getProducts()) {
+        for (Product p : products()) {
             if (p.price().compareTo(price) > 0) {
                 result.add(p);
             }
@@ -103,45 +145,51 @@ public class WarehouseAnalyzer {
     // === Analytics Methods ===
 
     /**
-     * Computes the weighted average price per category.
+     * Computes the weighted average price per category. On a live warehouse this reads the totals
+     * kept up to date on every change instead of summing the inventory, taken between two commits so
+     * a commit changing many products, such as clearing the warehouse, is seen whole or not at all.
      */
     public Map<Category, BigDecimal> calculateWeightedAveragePriceByCategory() {
-        Map<Category, List<Product>> byCat = Warehouse.getProducts().stream()
-                .collect(Collectors.groupingBy(Product::getCategory));
+        if (live) {
+            return Warehouse.betweenCommits(() -> Warehouse.categoryRollups().weightedAveragePrices());
+        }
+        CategoryTotals[] totals = new CategoryTotals[Category.count()];
+        for (Product p : products()) {
+            int id = p.getCategory().getId();
+            totals = CategoryTotals.ensureCapacity(totals, id);
+            if (totals[id] == null) {
+                totals[id] = new CategoryTotals(p.getCategory());
+            }
+            totals[id].add(p);
+        }
 
         Map<Category, BigDecimal> result = new HashMap<>();
-
-        for (Map.Entry<Category, List<Product>> e : byCat.entrySet()) {
-            Category cat = (Category) e.getKey();
-            List<Product> items = e.getValue();
-
-            BigDecimal weightedSum = BigDecimal.ZERO;
-            BigDecimal weightSum = BigDecimal.ZERO;
-
-            for (Product p : items) {
-                if (p instanceof Shippable s) {
-                    BigDecimal w = Optional.ofNullable(s.weight()).orElse(BigDecimal.ZERO);
-                    if (w.compareTo(BigDecimal.ZERO) > 0) {
-                        weightedSum = weightedSum.add(p.price().multiply(w));
-                        weightSum = weightSum.add(w);
-                    }
-                }
+        for (CategoryTotals t : totals) {
+            if (t != null) {
+                result.put(t.category(), t.weightedAveragePrice());
             }
+        }
+        return result;
+    }
 
-            BigDecimal avg;
-            if (weightSum.compareTo(BigDecimal.ZERO) > 0) {
-                avg = weightedSum.divide(weightSum, 2, RoundingMode.HALF_UP);
-            } else {
-                BigDecimal sum = items.stream()
-                        .map(Product::price)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                avg = sum.divide(BigDecimal.valueOf(items.size()), 2, RoundingMode.HALF_UP);
+    /**
+     * Weighted average price of one category, as in {@link #calculateWeightedAveragePriceByCategory()};
+     * empty when the category has no products.
+     */
+    public Optional<BigDecimal> calculateWeightedAveragePrice(Category category) {
+        if (category == null) {
+            throw new IllegalArgumentException("Category cannot be null.");
+        }
+        if (live) {
+            return Optional.ofNullable(Warehouse.betweenCommits(() -> Warehouse.categoryRollups().weightedAveragePrice(category)));
+        }
+        CategoryTotals totals = new CategoryTotals(category);
+        for (Product p : products()) {
+            if (p.getCategory() == category) {
+                totals.add(p);
             }
-
-            result.put(cat, avg);
         }
-
-        return result;
+        return totals.count() == 0 ? Optional.empty() : Optional.of(totals.weightedAveragePrice());
     }
 
     /**
@@ -151,7 +199,7 @@ public class WarehouseAnalyzer {
         Map<Product, BigDecimal> result = new HashMap<>();
         LocalDate today = LocalDate.now();
 
-        for (Product p : Warehouse.getProducts()) {
+        for (Product p : products()) {
             BigDecimal discounted = p.price();
 
             if (p instanceof FoodProduct f) {
@@ -179,19 +227,24 @@ public class WarehouseAnalyzer {
      * Validates warehouse inventory constraints.
      */
     public InventoryValidation validateInventoryConstraints() {
-        List<Product> items = Warehouse.getProducts();
+        if (live) {
+            return Warehouse.readIndex(index -> {
+                int total = index.size();
+                if (total == 0) return new InventoryValidation(0.0, 0);
+                double percentage = (index.count(ProductAttribute.HIGH_VALUE) * 100.0) / total;
+                return new InventoryValidation(percentage, index.categoryCount());
+            });
+        }
+
+        Collection<Product> items = products();
         if (items.isEmpty()) return new InventoryValidation(0.0, 0);
 
-        BigDecimal highValueThreshold = new BigDecimal("1000");
         long highValueCount = items.stream()
-                .filter(p -> p.price().compareTo(highValueThreshold) >= 0)
+                .filter(ProductAttribute.HIGH_VALUE::test)
                 .count();
 /// /
         double percentage = (highValueCount * 100.0) / items.size();
-        int diversity = (int) items.stream()
-                .map(Product::getCategory)
-                .distinct()
-                .count();
+        int diversity = countCategories(items);
 
         return new InventoryValidation(percentage, diversity);
     }
@@ -200,7 +253,7 @@ public class WarehouseAnalyzer {
      * Aggregates key warehouse statistics.
      */
     public InventoryStatistics getInventoryStatistics() {
-        List<Product> items = Warehouse.getProducts();
+        Collection<Product> items = products();
         int totalProducts = items.size();
 
         BigDecimal totalValue = items.stream()
@@ -215,18 +268,11 @@ public class WarehouseAnalyzer {
                 .filter(p -> p instanceof FoodProduct f && f.getExpirationDate().isBefore(LocalDate.now()))
                 .count();
 
-        int categoryCount = (int) items.stream()
-                .map(Product::getCategory)
-                .distinct()
-                .count();
-
-        Product mostExpensive = items.stream()
-                .max(Comparator.comparing(Product::price))
-                .orElse(null);
+        int categoryCount = countCategories(items);
 
-        Product cheapest = items.stream()
-                .min(Comparator.comparing(Product::price))
-                .orElse(null);
+        // Taken from the same list as the totals so all figures describe one version of the warehouse.
+        Product mostExpensive = items.stream().max(PriceRanking.BY_PRICE).orElse(null);
+        Product cheapest = items.stream().min(PriceRanking.BY_PRICE).orElse(null);
 
         return new InventoryStatistics(
                 totalProducts,
@@ -238,6 +284,84 @@ public class WarehouseAnalyzer {
                 cheapest
         );
     }
+
+    /**
+     * Up to {@code limit} most expensive products in the category (any category when {@code null}),
+     * most expensive first; equal prices are ordered by id. On a live warehouse this reads the
+     * ranking kept up to date on every change instead of sorting, between two commits.
+     */
+    public List<Product> findMostExpensiveProducts(Category category, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative.");
+        }
+        if (live) {
+            return Warehouse.betweenCommits(() -> Warehouse.priceRanking().mostExpensive(category, limit));
+        }
+        return ranked(category, PriceRanking.BY_PRICE.reversed(), limit);
+    }
+
+    /**
+     * Up to {@code limit} cheapest products in the category (any category when {@code null}),
+     * cheapest first; equal prices are ordered by id.
+     */
+    public List<Product> findCheapestProducts(Category category, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative.");
+        }
+        if (live) {
+            return Warehouse.betweenCommits(() -> Warehouse.priceRanking().cheapest(category, limit));
+        }
+        return ranked(category, PriceRanking.BY_PRICE, limit);
+    }
+
+    private List<Product> ranked(Category category, Comparator<Product> order, int limit) {
+        return products().stream()
+                .filter(p -> category == null || p.getCategory() == category)
+                .sorted(order)
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Approximate price at rank {@code q} (0.5 is the median) in the category, or across all
+     * categories when {@code null}; empty when there are no products. On a live warehouse this reads
+     * the sketches kept up to date on every change instead of sorting the prices, between two
+     * commits.
+     */
+    public Optional<BigDecimal> priceQuantile(Category category, double q) {
+        if (live) {
+            return Warehouse.betweenCommits(() -> Warehouse.priceSketches().quantile(category, q));
+        }
+        return priceSketch(category).quantile(q);
+    }
+
+    /**
+     * Approximate number of different prices in the category, or across all categories when
+     * {@code null}.
+     */
+    public long distinctPriceCount(Category category) {
+        if (live) {
+            return Warehouse.betweenCommits(() -> Warehouse.priceSketches().distinctCount(category));
+        }
+        return priceSketch(category).distinctCount();
+    }
+
+    /**
+     * Price sketch of the category, or of all categories when {@code null}, for merging with the
+     * sketches of other warehouses.
+     */
+    public PriceSketch priceSketch(Category category) {
+        if (live) {
+            return Warehouse.betweenCommits(() -> Warehouse.priceSketches().sketch(category));
+        }
+        PriceSketch sketch = new PriceSketch(Warehouse.priceSketches().accuracy());
+        for (Product p : products()) {
+            if (category == null || p.getCategory() == category) {
+                sketch.add(p.price());
+            }
+        }
+        return sketch;
+    }
 //
     /**
      * Optimizes grouping of shippable items by max weight.
@@ -247,7 +371,7 @@ public class WarehouseAnalyzer {
             throw new IllegalArgumentException("Max weight per group must be positive.");
         }
 
-        List<Shippable> items = new ArrayList<>(Warehouse.shippableProducts());
+        List<Shippable> items = shippables();
         items.sort((a, b) -> b.weight().compareTo(a.weight()));
 
         List<List<Shippable>> bins = new ArrayList<>();
@@ -279,6 +403,32 @@ public class WarehouseAnalyzer {
                 .toList();
     }
 
+    /**
+     * Packs shippable items into as few groups as possible, searching in parallel for at most
+     * {@code timeBudget}.
+     */
+    public ShippingPlanner.ShippingPlan planShippingGroups(BigDecimal maxWeightPerGroup, Duration timeBudget) {
+        return new ShippingPlanner(timeBudget).plan(shippables(), maxWeightPerGroup);
+    }
+
+    private List<Shippable> shippables() {
+        List<Shippable> items = new ArrayList<>();
+        for (Product p : products()) {
+            if (p instanceof Shippable s) {
+                items.add(s);
+            }
+        }
+        return items;
+    }
+
+    private static int countCategories(Collection<Product> items) {
+        BitSet seen = new BitSet(Category.count());
+        for (Product p : items) {
+            seen.set(p.getCategory().getId());
+        }
+        return seen.cardinality();
+    }
+
     // === Inner Helper Classes ===
 
     public static class ShippingGroup {
@@ -288,13 +438,9 @@ public class WarehouseAnalyzer {
 
         public ShippingGroup(List<com.example.Shippable> products) {
             this.products = new ArrayList<com.example.Shippable>(products);
-            this.totalWeight = products.stream()
-                    .map(Shippable::weight)
-                    .filter(Objects::nonNull)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            this.totalShippingCost = products.stream()
-                    .map(Shippable::calculateShippingCost)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            ShippingCosts.Totals totals = ShippingCosts.totals(this.products);
+            this.totalWeight = totals.totalWeight();
+            this.totalShippingCost = totals.totalShippingCost();
         }
 
         public List<Shippable> getProducts() { return new ArrayList<>(products); }
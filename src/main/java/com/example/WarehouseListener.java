@@ -0,0 +1,24 @@
+package com.example;
+
+/**
+ * Receives changes to the products in the {@link Warehouse}.
+ * <p>
+ * Callbacks run synchronously on the writing thread, in commit order, while the warehouse holds its
+ * write lock, so they see every change exactly once and should return quickly. Exceptions they
+ * throw are reported to the writing thread's uncaught exception handler and do not undo or stop the
+ * commit.
+ */
+public interface WarehouseListener {
+
+    default void productAdded(Product product) {
+    }
+
+    default void productRemoved(Product product) {
+    }
+
+    /**
+     * Called when a stored product is replaced, for example by a price update.
+     */
+    default void productUpdated(Product before, Product after) {
+    }
+}
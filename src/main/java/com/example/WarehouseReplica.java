@@ -0,0 +1,251 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Read-only copy of a {@link Warehouse} kept up to date by a {@link ReplicationPrimary}.
+ * <p>
+ * A background thread applies the primary's changes in order to the replica's own version store,
+ * so readers get consistent lists while it writes. A snapshot replaces the whole store at once.
+ * After a lost connection it reconnects and asks for the changes after the last one it applied,
+ * naming the primary that numbered it. A product the primary cannot replicate is missing here; the
+ * latest reason is kept in {@link #lastSkipped()} and replication carries on.
+ * Lag is measured in changes and in time since the primary committed the last applied change, which
+ * assumes both clocks roughly agree.
+ */
+public class WarehouseReplica implements AutoCloseable {
+
+    private static final Duration RECONNECT_DELAY = Duration.ofMillis(100);
+
+    private final InetSocketAddress primary;
+    private final Clock clock;
+    private final Thread receiver;
+
+    private volatile ProductVersionStore products = new ProductVersionStore();
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private volatile String lastSkipped;
+
+    // Guarded by this.
+    private long primaryId;
+    private long appliedSequence = -1;
+    private long primarySequence;
+    private long appliedCommitMillis;
+    private long snapshotsReceived;
+    private long batchesReceived;
+
+    public WarehouseReplica(InetSocketAddress primary) {
+        this(primary, Clock.systemUTC());
+    }
+
+    public WarehouseReplica(InetSocketAddress primary, Clock clock) {
+        this.primary = primary;
+        this.clock = clock;
+        this.receiver = new Thread(this::receiveLoop, "replication-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public List<Product> getProducts() {
+        return Collections.unmodifiableList(products.readAll());
+    }
+
+    public Optional<Product> getProductById(UUID id) {
+        return Optional.ofNullable(products.latest(id));
+    }
+
+    /**
+     * An analyzer over the replica's products. Queries read them as they are when each query runs.
+     */
+    public WarehouseAnalyzer analyzer() {
+        return new WarehouseAnalyzer(this::getProducts);
+    }
+
+    public synchronized Lag lag() {
+        long behind = appliedSequence < 0 ? primarySequence : Math.max(0, primarySequence - appliedSequence);
+        Duration time = behind == 0 || appliedSequence < 0
+                ? Duration.ZERO
+                : Duration.ofMillis(Math.max(0, clock.millis() - appliedCommitMillis));
+        return new Lag(appliedSequence, primarySequence, behind, time, snapshotsReceived, batchesReceived);
+    }
+
+    /**
+     * Why the primary last left a product out, when it has.
+     */
+    public Optional<String> lastSkipped() {
+        return Optional.ofNullable(lastSkipped);
+    }
+
+    /**
+     * Waits until the change numbered {@code sequence} has been applied; returns whether it was.
+     */
+    public synchronized boolean awaitSequence(long sequence, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (appliedSequence < sequence) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) return false;
+            wait(Math.max(1, left / 1_000_000));
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // Closing anyway.
+            }
+        }
+        receiver.interrupt();
+    }
+
+    private void receiveLoop() {
+        while (!closed) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.connect(primary);
+                s.setTcpNoDelay(true);
+                if (closed) return;
+                receive(s);
+            } catch (IOException e) {
+                // Primary unreachable or connection lost; try again.
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY.toMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void receive(Socket s) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        out.writeInt(ReplicationPrimary.MAGIC);
+        out.writeInt(ReplicationPrimary.PROTOCOL_VERSION);
+        synchronized (this) {
+            out.writeLong(primaryId);
+            out.writeLong(appliedSequence);
+        }
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        while (!closed) {
+            byte type = in.readByte();
+            if (type == ReplicationPrimary.SNAPSHOT) {
+                applySnapshot(in);
+            } else if (type == ReplicationPrimary.BATCH) {
+                applyBatch(in);
+            } else if (type == ReplicationPrimary.SKIPPED) {
+                lastSkipped = in.readUTF();
+            } else {
+                throw new IOException("Unknown replication frame: " + type);
+            }
+        }
+    }
+
+    private void applySnapshot(DataInputStream in) throws IOException {
+        long fromPrimary = in.readLong();
+        long sequence = in.readLong();
+        long commitMillis = in.readLong();
+        List<Product> snapshot = ProductCodec.decodeAll(readPayload(in));
+
+        ProductVersionStore fresh = new ProductVersionStore();
+        for (Product product : snapshot) {
+            fresh.put(product);
+        }
+        products = fresh;
+        synchronized (this) {
+            if (fromPrimary != primaryId) {
+                // Numbers from another primary are not comparable with ours.
+                primarySequence = sequence;
+            }
+            primaryId = fromPrimary;
+            appliedSequence = sequence;
+            primarySequence = Math.max(primarySequence, sequence);
+            appliedCommitMillis = commitMillis;
+            snapshotsReceived++;
+            notifyAll();
+        }
+    }
+
+    private void applyBatch(DataInputStream in) throws IOException {
+        long firstSequence = in.readLong();
+        long latest = in.readLong();
+        long commitMillis = in.readLong();
+        int count = in.readInt();
+        byte[] ops = new byte[count];
+        UUID[] removed = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            ops[i] = in.readByte();
+            if (ops[i] == ReplicationPrimary.REMOVE) {
+                removed[i] = new UUID(in.readLong(), in.readLong());
+            }
+        }
+        List<Product> upserts = ProductCodec.decodeAll(readPayload(in));
+
+        synchronized (this) {
+            if (firstSequence != appliedSequence + 1) {
+                throw new IOException("Expected change " + (appliedSequence + 1) + " but got " + firstSequence);
+            }
+        }
+        ProductVersionStore store = products;
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (ops[i] == ReplicationPrimary.UPSERT) {
+                store.put(upserts.get(next++));
+            } else {
+                store.remove(removed[i]);
+            }
+        }
+        synchronized (this) {
+            appliedSequence += count;
+            primarySequence = Math.max(primarySequence, latest);
+            if (count > 0) {
+                appliedCommitMillis = commitMillis;
+                batchesReceived++;
+            }
+            notifyAll();
+        }
+    }
+
+    private static ByteBuffer readPayload(DataInputStream in) throws IOException {
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return ByteBuffer.wrap(payload);
+    }
+
+    /**
+     * Replication progress of a replica.
+     *
+     * @param appliedSequence last change applied, -1 before the first snapshot
+     * @param primarySequence latest change the primary has reported
+     * @param changesBehind   changes committed on the primary but not applied here
+     * @param timeBehind      time since the primary committed the last applied change, zero when
+     *                        up to date
+     */
+    public record Lag(
+            long appliedSequence,
+            long primarySequence,
+            long changesBehind,
+            Duration timeBehind,
+            long snapshotsReceived,
+            long batchesReceived
+    ) { }
+}
@@ -13,9 +13,14 @@ import com.example.Shippable;
 import java.lang.reflect.Constructor;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.example.Category.of;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -101,6 +106,56 @@ class BasicTest {
                     .isInstanceOf(IllegalArgumentException.class)
                     .hasMessage("Category name can't be blank");
         }
+
+        @Test
+        @Order(8)
+        @DisplayName("✅ should assign one dense id per normalized name")
+        void should_assignSameId_when_spellingsNormalizeToSameName() {
+            Category padded = of("  beverages ");
+            Category upper = of("BEVERAGES");
+            assertThat(padded).isSameAs(upper);
+            assertThat(padded.getId())
+                    .as("Ids should be small indexes below the number of categories created.")
+                    .isBetween(0, Category.count() - 1);
+            assertThat(Category.byId(padded.getId())).isSameAs(padded);
+        }
+
+        @Test
+        @Order(9)
+        @DisplayName("❌ should reject ids that were never assigned")
+        void should_throwException_when_idIsUnknown() {
+            assertThatThrownBy(() -> Category.byId(Category.count()))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Unknown category id");
+        }
+
+        @Test
+        @Order(10)
+        @DisplayName("🔒 should register categories created concurrently under their ids without gaps")
+        void should_registerEveryId_when_categoriesCreatedConcurrently() throws InterruptedException {
+            int threads = 8;
+            int perThread = 300;
+            Category[][] created = new Category[threads][perThread];
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers.add(Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        created[thread][i] = of("Concurrent " + thread + " " + i);
+                    }
+                }));
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            for (Category[] row : created) {
+                for (Category category : row) {
+                    assertThat(category.getId()).isLessThan(Category.count());
+                    assertThat(Category.byId(category.getId())).isSameAs(category);
+                }
+            }
+        }
     }
 
     /**
@@ -173,6 +228,87 @@ class BasicTest {
                         .hasMessage("Product cannot be null.");
             }
 
+            @Test
+            @DisplayName("❌ should throw an exception when adding a product without an id")
+            void should_throwException_when_addingProductWithNullId() {
+                Product noId = new FoodProduct(null, "Milk", of("Dairy"), BigDecimal.ONE, LocalDate.now(), BigDecimal.ONE);
+                assertThatThrownBy(() -> warehouse.addProduct(noId))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessage("Product id cannot be null.");
+            }
+
+            @Test
+            @DisplayName("❌ should reject a product without a category and leave the warehouse unchanged")
+            void should_throwException_when_productHasNoCategory() {
+                Product noCategory = new FoodProduct(UUID.randomUUID(), "Milk", null, BigDecimal.ONE, LocalDate.now(), BigDecimal.ONE);
+                assertThatThrownBy(() -> warehouse.addProduct(noCategory))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessage("Product category cannot be null.");
+                assertThat(warehouse.isEmpty()).isTrue();
+                assertThat(warehouse.getProductById(noCategory.uuid())).isEmpty();
+            }
+
+            @Test
+            @DisplayName("❌ should not let a stored product be repriced in place")
+            void should_keepStoredVersion_when_repricedThroughWarehouse() {
+                Product milk = new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), new BigDecimal("15"), LocalDate.now().plusDays(5), BigDecimal.ONE);
+                warehouse.addProduct(milk);
+
+                warehouse.updateProductPrice(milk.uuid(), BigDecimal.TEN);
+
+                assertThat(milk.price()).isEqualTo(new BigDecimal("15"));
+                assertThat(warehouse.getProductById(milk.uuid())).get()
+                        .satisfies(p -> assertThat(p).isNotSameAs(milk))
+                        .extracting(Product::name, Product::price)
+                        .containsExactly("Milk", BigDecimal.TEN);
+            }
+
+            @Test
+            @DisplayName("✅ should keep the subclass of a repriced product")
+            void should_keepSubclass_when_productRepriced() {
+                class Organic extends FoodProduct {
+                    Organic(UUID uuid) {
+                        super(uuid, "Organic milk", of("Dairy"), new BigDecimal("25"), LocalDate.now().plusDays(5), BigDecimal.ONE);
+                    }
+
+                    Organic(Organic source, BigDecimal price) {
+                        super(source, price);
+                    }
+
+                    @Override
+                    protected Organic withPrice(BigDecimal newPrice) {
+                        return new Organic(this, newPrice);
+                    }
+                }
+                Product organic = new Organic(UUID.randomUUID());
+                warehouse.addProduct(organic);
+                warehouse.updateProductPrice(organic.uuid(), new BigDecimal("20"));
+
+                assertThat(warehouse.getProductById(organic.uuid())).get()
+                        .isInstanceOf(Organic.class)
+                        .extracting(Product::price, p -> ((FoodProduct) p).weight())
+                        .containsExactly(new BigDecimal("20"), BigDecimal.ONE);
+            }
+
+            @Test
+            @DisplayName("✅ should group products by their category")
+            void should_groupProducts_when_groupingByCategory() {
+                Product milk = new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), BigDecimal.ONE, LocalDate.now().plusDays(5), BigDecimal.ONE);
+                Product cheese = new FoodProduct(UUID.randomUUID(), "Cheese", of("Dairy"), BigDecimal.TEN, LocalDate.now().plusDays(5), BigDecimal.ONE);
+                Product tv = new ElectronicsProduct(UUID.randomUUID(), "TV", of("Electronics"), BigDecimal.TEN, 12, BigDecimal.TEN);
+                warehouse.addProduct(milk);
+                warehouse.addProduct(cheese);
+                warehouse.addProduct(tv);
+
+                Map<Category, List<Product>> groups = warehouse.getProductsGroupedByCategories();
+                assertThat(groups).containsOnlyKeys(of("Dairy"), of("Electronics"));
+                assertThat(groups.get(of("Dairy"))).containsExactlyInAnyOrder(milk, cheese);
+                assertThat(groups.get(of("Electronics"))).containsExactly(tv);
+                assertThat(groups.get(of("Toys"))).isNull();
+                assertThat(groups).isEqualTo(Map.of(of("Dairy"), groups.get(of("Dairy")), of("Electronics"), List.of(tv)));
+                assertThatThrownBy(() -> groups.get(of("Dairy")).add(tv)).isInstanceOf(UnsupportedOperationException.class);
+            }
+
             @Test
             @DisplayName("✅ should return an empty map when grouping by category if empty")
             void should_returnEmptyMap_when_groupingCategoriesOnEmptyWarehouse() {
@@ -272,6 +408,204 @@ class BasicTest {
         }
 
 
+        @Nested
+        @DisplayName("Bitmap Indexes")
+        class IndexTests {
+
+            @Test
+            @DisplayName("✅ should count and list products combining category and attributes")
+            void should_intersectIndexes_when_combiningFilters() {
+                Product milk = new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), new BigDecimal("15"), LocalDate.now().plusDays(5), BigDecimal.ONE);
+                Product caviar = new FoodProduct(UUID.randomUUID(), "Caviar", of("Delicatessen"), new BigDecimal("2500"), LocalDate.now().plusDays(5), new BigDecimal("0.2"));
+                Product tv = new ElectronicsProduct(UUID.randomUUID(), "TV", of("Electronics"), new BigDecimal("8999"), 24, new BigDecimal("12"));
+                Product phone = new ElectronicsProduct(UUID.randomUUID(), "Phone", of("Electronics"), new BigDecimal("999"), 24, new BigDecimal("0.2"));
+                List.of(milk, caviar, tv, phone).forEach(warehouse::addProduct);
+
+                assertThat(warehouse.countMatching(null, ProductAttribute.HIGH_VALUE)).isEqualTo(2);
+                assertThat(warehouse.countMatching(null, ProductAttribute.PERISHABLE, ProductAttribute.HIGH_VALUE)).isEqualTo(1);
+                assertThat(warehouse.countMatching(of("Electronics"), ProductAttribute.HEAVY)).isEqualTo(1);
+                assertThat(warehouse.findMatching(of("Electronics"))).containsExactlyInAnyOrder(tv, phone);
+
+                warehouse.updateProductPrice(phone.uuid(), new BigDecimal("1000"));
+                warehouse.remove(tv.uuid());
+                assertThat(warehouse.findMatching(null, ProductAttribute.HIGH_VALUE, ProductAttribute.SHIPPABLE))
+                        .as("Indexes should follow price updates and removals.")
+                        .extracting(Product::name)
+                        .containsExactlyInAnyOrder("Caviar", "Phone");
+            }
+
+            @Test
+            @DisplayName("✅ should validate inventory from the indexes exactly like a full scan")
+            void should_matchScan_when_validatingFromIndexes() {
+                for (int i = 0; i < 50; i++) {
+                    warehouse.addProduct(new ElectronicsProduct(UUID.randomUUID(), "Item " + i, of("Group" + (i % 3)), BigDecimal.valueOf(i * 50L), 12, BigDecimal.ONE));
+                }
+                WarehouseAnalyzer live = new WarehouseAnalyzer(warehouse);
+                WarehouseAnalyzer.InventoryValidation indexed = live.validateInventoryConstraints();
+                WarehouseAnalyzer.InventoryValidation scanned = live.snapshot().validateInventoryConstraints();
+
+                assertThat(indexed.getHighValuePercentage()).isEqualTo(scanned.getHighValuePercentage()).isEqualTo(60.0);
+                assertThat(indexed.getCategoryDiversity()).isEqualTo(scanned.getCategoryDiversity()).isEqualTo(3);
+            }
+
+            @Test
+            @DisplayName("🔒 should never validate against part of a commit that clears the warehouse")
+            void should_readWholeCommits_when_clearedConcurrently() throws InterruptedException {
+                WarehouseAnalyzer live = new WarehouseAnalyzer(warehouse);
+                AtomicBoolean running = new AtomicBoolean(true);
+                AtomicInteger torn = new AtomicInteger();
+                Thread reader = new Thread(() -> {
+                    while (running.get()) {
+                        // Every other product is high value and each has its own category, so any
+                        // whole commit shows half of the categories, rounded down, as high value.
+                        WarehouseAnalyzer.InventoryValidation validation = live.validateInventoryConstraints();
+                        int products = validation.getCategoryDiversity();
+                        double expected = products == 0 ? 0.0 : (products / 2) * 100.0 / products;
+                        if (validation.getHighValuePercentage() != expected) {
+                            torn.incrementAndGet();
+                        }
+                    }
+                });
+                reader.start();
+                try {
+                    for (int round = 0; round < 200; round++) {
+                        for (int i = 0; i < 40; i++) {
+                            BigDecimal price = i % 2 == 1 ? ProductAttribute.HIGH_VALUE_THRESHOLD : BigDecimal.ONE;
+                            warehouse.addProduct(new ElectronicsProduct(UUID.randomUUID(), "Item " + i, of("Indexed " + i), price, 12, BigDecimal.ONE));
+                        }
+                        warehouse.clearProducts();
+                    }
+                } finally {
+                    running.set(false);
+                    reader.join();
+                }
+                assertThat(torn).hasValue(0);
+            }
+        }
+
+        @Nested
+        @DisplayName("Snapshots")
+        class SnapshotTests {
+
+            @Test
+            @DisplayName("✅ should keep showing the pinned state while the warehouse changes")
+            void should_keepPinnedState_when_warehouseChanges() {
+                Product milk = new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), new BigDecimal("15"), LocalDate.now().plusDays(5), BigDecimal.ONE);
+                Product cheese = new FoodProduct(UUID.randomUUID(), "Cheese", of("Dairy"), new BigDecimal("80"), LocalDate.now().plusDays(20), BigDecimal.ONE);
+                warehouse.addProduct(milk);
+                warehouse.addProduct(cheese);
+
+                try (Warehouse.Snapshot snapshot = warehouse.snapshot()) {
+                    warehouse.updateProductPrice(milk.uuid(), new BigDecimal("20"));
+                    warehouse.remove(cheese.uuid());
+                    warehouse.addProduct(new ElectronicsProduct(UUID.randomUUID(), "Laptop", of("Electronics"), new BigDecimal("9999"), 24, BigDecimal.TEN));
+
+                    assertThat(snapshot.getProducts())
+                            .as("A snapshot should not see writes committed after it was taken.")
+                            .containsExactlyInAnyOrder(milk, cheese);
+                    assertThat(snapshot.getProductById(milk.uuid())).get()
+                            .extracting(Product::price)
+                            .isEqualTo(new BigDecimal("15"));
+                    assertThat(warehouse.getProductById(milk.uuid())).get()
+                            .extracting(Product::price)
+                            .isEqualTo(new BigDecimal("20"));
+                    assertThat(Warehouse.getProducts()).hasSize(2);
+                }
+            }
+
+            @Test
+            @DisplayName("✅ should reclaim old versions once no snapshot needs them")
+            void should_reclaimOldVersions_when_snapshotIsClosed() {
+                Product milk = new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), new BigDecimal("15"), LocalDate.now().plusDays(5), BigDecimal.ONE);
+                warehouse.addProduct(milk);
+                int baseline = Warehouse.retainedVersions();
+
+                Warehouse.Snapshot snapshot = warehouse.snapshot();
+                warehouse.updateProductPrice(milk.uuid(), new BigDecimal("16"));
+                warehouse.updateProductPrice(milk.uuid(), new BigDecimal("17"));
+                assertThat(Warehouse.retainedVersions())
+                        .as("Versions visible to the open snapshot must be kept.")
+                        .isGreaterThan(baseline);
+
+                snapshot.close();
+                warehouse.updateProductPrice(milk.uuid(), new BigDecimal("18"));
+                assertThat(Warehouse.retainedVersions()).isEqualTo(baseline);
+                assertThatThrownBy(snapshot::getProducts).isInstanceOf(IllegalStateException.class);
+            }
+
+            @Test
+            @DisplayName("❌ should take back a whole commit when a change handler fails")
+            void should_rollBackCommit_when_handlerThrows() {
+                ProductVersionStore store = new ProductVersionStore();
+                List<Product> seen = new ArrayList<>();
+                store.addHandler((before, after) -> {
+                    if (before != null) seen.remove(before);
+                    if (after != null) seen.add(after);
+                });
+                AtomicReference<UUID> poisoned = new AtomicReference<>(UUID.randomUUID());
+                store.addHandler((before, after) -> {
+                    Product changed = after != null ? after : before;
+                    if (changed.uuid().equals(poisoned.get())) {
+                        throw new IllegalStateException("Handler failed");
+                    }
+                });
+                Product milk = new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), BigDecimal.ONE, LocalDate.now().plusDays(5), BigDecimal.ONE);
+                Product cheese = new FoodProduct(UUID.randomUUID(), "Cheese", of("Dairy"), BigDecimal.TEN, LocalDate.now().plusDays(5), BigDecimal.ONE);
+                Product bad = new FoodProduct(poisoned.get(), "Bad", of("Dairy"), BigDecimal.TEN, LocalDate.now().plusDays(5), BigDecimal.ONE);
+                store.put(milk);
+                long version = store.committedVersion();
+
+                assertThatThrownBy(() -> store.put(bad)).isInstanceOf(IllegalStateException.class);
+                assertThat(store.latest(bad.uuid())).isNull();
+                assertThat(store.size()).isEqualTo(1);
+                assertThat(store.committedVersion()).isEqualTo(version);
+                assertThat(seen).containsExactly(milk);
+
+                store.put(cheese);
+                assertThat(store.readAll()).containsExactlyInAnyOrder(milk, cheese);
+
+                // A clear failing part way through keeps every product.
+                for (int i = 0; i < 20; i++) {
+                    store.put(new FoodProduct(UUID.randomUUID(), "Bread " + i, of("Bakery"), BigDecimal.ONE, LocalDate.now().plusDays(2), BigDecimal.ONE));
+                }
+                List<Product> before = store.readAll();
+                poisoned.set(cheese.uuid());
+                assertThatThrownBy(store::clear).isInstanceOf(IllegalStateException.class);
+                assertThat(store.size()).isEqualTo(22);
+                assertThat(store.readAll()).containsExactlyInAnyOrderElementsOf(before);
+                assertThat(seen).containsExactlyInAnyOrderElementsOf(before);
+
+                poisoned.set(null);
+                assertThat(store.clear()).containsExactlyInAnyOrderElementsOf(before);
+                assertThat(seen).isEmpty();
+            }
+
+            @Test
+            @DisplayName("🔒 should let readers run while writers keep changing the warehouse")
+            void should_readConsistently_when_writersAreActive() throws InterruptedException {
+                WarehouseAnalyzer analyzer = new WarehouseAnalyzer(warehouse);
+                AtomicBoolean running = new AtomicBoolean(true);
+                Thread writer = new Thread(() -> {
+                    while (running.get()) {
+                        Product p = new FoodProduct(UUID.randomUUID(), "Bread", of("Bakery"), BigDecimal.TEN, LocalDate.now().plusDays(2), BigDecimal.ONE);
+                        warehouse.addProduct(p);
+                        warehouse.updateProductPrice(p.uuid(), BigDecimal.ONE);
+                        warehouse.remove(p.uuid());
+                    }
+                });
+                writer.start();
+                try {
+                    for (int i = 0; i < 2_000; i++) {
+                        WarehouseAnalyzer.InventoryStatistics stats = analyzer.getInventoryStatistics();
+                        assertThat(stats.totalProducts()).isBetween(0, 1);
+                    }
+                } finally {
+                    running.set(false);
+                    writer.join();
+                }
+            }
+        }
+
         @Nested
         @DisplayName("A Food Product")
         class FoodProductTests {
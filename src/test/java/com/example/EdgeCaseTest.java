@@ -1,7 +1,39 @@
 package com.example;
 
-import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.Category.of;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 //
 /**
@@ -12,5 +44,1476 @@ public class EdgeCaseTest {
     void placeholder() {
         assertTrue(true);
     }
+
+    /**
+     * Test suite for {@link AsyncWarehouseAnalyzer}.
+     */
+    @Nested
+    @DisplayName("An AsyncWarehouseAnalyzer")
+    class AsyncAnalyzerTests {
+
+        Warehouse warehouse;
+
+        @BeforeEach
+        void setUp() {
+            warehouse = Warehouse.getInstance("TestWarehouse");
+            warehouse.clearProducts();
+            warehouse.addProduct(new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), new BigDecimal("15"), LocalDate.now().plusDays(1), new BigDecimal("1.0")));
+            warehouse.addProduct(new FoodProduct(UUID.randomUUID(), "Cheese", of("Dairy"), new BigDecimal("80"), LocalDate.now().minusDays(1), new BigDecimal("0.5")));
+            warehouse.addProduct(new ElectronicsProduct(UUID.randomUUID(), "Laptop", of("Electronics"), new BigDecimal("12999"), 24, new BigDecimal("2.2")));
+        }
+
+        @AfterEach
+        void tearDown() {
+            warehouse.clearProducts();
+        }
+
+        @Test
+        @DisplayName("✅ should build a report that matches the synchronous queries")
+        void should_matchSynchronousResults_when_generatingReport() {
+            WarehouseAnalyzer analyzer = new WarehouseAnalyzer(warehouse);
+            try (AsyncWarehouseAnalyzer async = new AsyncWarehouseAnalyzer(analyzer)) {
+                AsyncWarehouseAnalyzer.InventoryReport report = async.generateReport(new BigDecimal("10")).join();
+
+                assertThat(report.statistics()).isEqualTo(analyzer.getInventoryStatistics());
+                assertThat(report.weightedAveragePriceByCategory()).isEqualTo(analyzer.calculateWeightedAveragePriceByCategory());
+                assertThat(report.validation().getCategoryDiversity()).isEqualTo(2);
+                assertThat(report.shippingGroups()).hasSize(1);
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should share one computation between identical in-flight queries")
+        void should_coalesceIdenticalQueries_when_firstIsStillRunning() throws InterruptedException {
+            AtomicInteger reads = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            WarehouseAnalyzer blocking = new WarehouseAnalyzer(warehouse, () -> {
+                reads.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Warehouse.getProducts();
+            });
+
+            try (AsyncWarehouseAnalyzer async = new AsyncWarehouseAnalyzer(blocking)) {
+                CompletableFuture<WarehouseAnalyzer.InventoryStatistics> first = async.getInventoryStatistics();
+                CompletableFuture<WarehouseAnalyzer.InventoryStatistics> second = async.getInventoryStatistics();
+                release.countDown();
+
+                assertThat(first.join()).isEqualTo(second.join());
+                assertThat(reads.get())
+                        .as("The second request should reuse the first one's snapshot and result.")
+                        .isEqualTo(1);
+
+                async.getInventoryStatistics().join();
+                assertThat(reads.get())
+                        .as("A request made after completion should compute a fresh result.")
+                        .isEqualTo(2);
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should run independent queries without waiting for each other")
+        void should_returnExpectedResults_when_runningDifferentQueries() {
+            try (AsyncWarehouseAnalyzer async = new AsyncWarehouseAnalyzer(warehouse)) {
+                CompletableFuture<List<Product>> dairy = async.findProductsInCategory(of("Dairy"));
+                CompletableFuture<List<Product>> expensive = async.findProductsAbovePrice(new BigDecimal("1000"));
+
+                assertThat(dairy.join()).extracting(Product::name).containsExactlyInAnyOrder("Milk", "Cheese");
+                assertThat(expensive.join()).extracting(Product::name).containsExactly("Laptop");
+            }
+        }
+    }
+
+    /**
+     * Test suite for {@link CompressedBitmap}, checked against {@link BitSet}.
+     */
+    @Nested
+    @DisplayName("A CompressedBitmap")
+    class CompressedBitmapTests {
+
+        @Test
+        @DisplayName("✅ should behave like a BitSet through sparse and dense containers")
+        void should_matchBitSet_when_addingAndRemovingRandomValues() {
+            SplittableRandom random = new SplittableRandom(11);
+            CompressedBitmap a = new CompressedBitmap();
+            CompressedBitmap b = new CompressedBitmap();
+            BitSet expectedA = new BitSet();
+            BitSet expectedB = new BitSet();
+
+            for (int i = 0; i < 60_000; i++) {
+                // Dense in the first 64K values, sparse above, so both container kinds are used.
+                int value = random.nextBoolean() ? random.nextInt(20_000) : random.nextInt(1 << 20);
+                boolean add = random.nextInt(4) != 0;
+                CompressedBitmap target = (i & 1) == 0 ? a : b;
+                BitSet expected = (i & 1) == 0 ? expectedA : expectedB;
+                assertThat(add ? target.add(value) : target.remove(value)).isEqualTo(add != expected.get(value));
+                expected.set(value, add);
+            }
+
+            BitSet both = (BitSet) expectedA.clone();
+            both.and(expectedB);
+            assertThat(a.cardinality()).isEqualTo(expectedA.cardinality());
+            assertThat(a.andCardinality(b)).isEqualTo(both.cardinality());
+
+            BitSet actual = new BitSet();
+            a.and(b).forEach(actual::set);
+            assertThat(actual).isEqualTo(both);
+
+            expectedA.stream().forEach(v -> a.remove(v));
+            assertThat(a.isEmpty()).isTrue();
+        }
+    }
+
+    /**
+     * Test suite for {@link ShippingPlanner}.
+     */
+    @Nested
+    @DisplayName("A ShippingPlanner")
+    class ShippingPlannerTests {
+
+        private Shippable item(String weight) {
+            return new FoodProduct(UUID.randomUUID(), "Crate " + weight, of("Bulk"), BigDecimal.ONE, LocalDate.now().plusDays(30), new BigDecimal(weight));
+        }
+
+        @Test
+        @DisplayName("✅ should beat first-fit decreasing and reach the lower bound")
+        void should_reachLowerBound_when_firstFitDecreasingIsSuboptimal() {
+            // First-fit decreasing needs three groups here: {5, 4}, {4, 3, 2}, {2}.
+            List<Shippable> items = List.of(item("5"), item("4"), item("4"), item("3"), item("2"), item("2"));
+
+            ShippingPlanner.ShippingPlan plan = new ShippingPlanner(Duration.ofSeconds(5)).plan(items, new BigDecimal("10"));
+
+            assertThat(plan.groupCount()).isEqualTo(2);
+            assertThat(plan.lowerBound()).isEqualTo(2);
+            assertThat(plan.gap()).isZero();
+            assertThat(plan.totalShippingCost()).isEqualByComparingTo("1000");
+            assertThat(plan.groups()).allSatisfy(g -> assertThat(g.getTotalWeight()).isLessThanOrEqualTo(new BigDecimal("10")));
+        }
+
+        @Test
+        @DisplayName("✅ should ship oversized items alone and keep every item exactly once")
+        void should_keepEveryItemOnce_when_someItemsAreOversized() {
+            SplittableRandom random = new SplittableRandom(3);
+            List<Shippable> items = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                items.add(item(BigDecimal.valueOf(random.nextInt(1, 900), 2).toPlainString()));
+            }
+            items.add(item("12.5"));
+
+            ShippingPlanner.ShippingPlan plan = new ShippingPlanner(Duration.ofMillis(100)).plan(items, new BigDecimal("10"));
+
+            assertThat(plan.groups().stream().flatMap(g -> g.getProducts().stream()).toList())
+                    .containsExactlyInAnyOrderElementsOf(items);
+            assertThat(plan.groups())
+                    .filteredOn(g -> g.getTotalWeight().compareTo(new BigDecimal("10")) > 0)
+                    .singleElement()
+                    .satisfies(g -> assertThat(g.getProducts()).hasSize(1));
+            assertThat(plan.groupCount()).isGreaterThanOrEqualTo(plan.lowerBound());
+        }
+    }
+
+    /**
+     * Test suite for {@link IncrementalShippingPlanner}.
+     */
+    @Nested
+    @DisplayName("An IncrementalShippingPlanner")
+    class IncrementalShippingPlannerTests {
+
+        Warehouse warehouse;
+
+        @BeforeEach
+        void setUp() {
+            warehouse = Warehouse.getInstance("TestWarehouse");
+            warehouse.clearProducts();
+        }
+
+        @AfterEach
+        void tearDown() {
+            warehouse.clearProducts();
+        }
+
+        private Product crate(String weight) {
+            return new FoodProduct(UUID.randomUUID(), "Crate " + weight, of("Bulk"), BigDecimal.ONE, LocalDate.now().plusDays(30), new BigDecimal(weight));
+        }
+
+        @Test
+        @DisplayName("✅ should follow additions and removals in the warehouse")
+        void should_updateGroups_when_warehouseChanges() {
+            Product existing = crate("6");
+            warehouse.addProduct(existing);
+
+            try (IncrementalShippingPlanner planner = new IncrementalShippingPlanner(warehouse, new BigDecimal("10"))) {
+                Product small = crate("3");
+                Product large = crate("8");
+                warehouse.addProduct(small);
+                warehouse.addProduct(large);
+                warehouse.addProduct(new ElectronicsProduct(UUID.randomUUID(), "Laptop", of("Electronics"), BigDecimal.TEN, 12, new BigDecimal("0.5")));
+
+                assertThat(planner.getGroups())
+                        .extracting(g -> g.getTotalWeight().stripTrailingZeros().toPlainString())
+                        .containsExactlyInAnyOrder("9.5", "8");
+
+                warehouse.remove(existing.uuid());
+                warehouse.updateProductPrice(large.uuid(), new BigDecimal("99"));
+
+                assertThat(planner.groupCount()).isEqualTo(2);
+                assertThat(planner.getGroups().stream().flatMap(g -> g.getProducts().stream()).toList())
+                        .as("Groups should hold the latest version of each product and nothing removed.")
+                        .hasSize(3)
+                        .doesNotContain((Shippable) existing)
+                        .anySatisfy(s -> assertThat(s.price()).isEqualByComparingTo("99"));
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should replace the groups when re-optimizing finds fewer")
+        void should_reduceGroups_when_reoptimizing() {
+            try (IncrementalShippingPlanner planner = new IncrementalShippingPlanner(warehouse, new BigDecimal("10"))) {
+                for (String weight : List.of("5", "4", "4", "3", "2", "2")) {
+                    warehouse.addProduct(crate(weight));
+                }
+                assertThat(planner.groupCount()).isEqualTo(3);
+
+                assertThat(planner.reoptimize(Duration.ofSeconds(5))).isTrue();
+                assertThat(planner.groupCount()).isEqualTo(2);
+
+                warehouse.addProduct(crate("1"));
+                assertThat(planner.groupCount()).isEqualTo(3);
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should keep following the warehouse after a product too heavy for any group")
+        void should_keepTracking_when_weightExceedsEveryGroup() {
+            try (IncrementalShippingPlanner planner = new IncrementalShippingPlanner(warehouse, new BigDecimal("10"))) {
+                Product container = crate("1E+20");
+                warehouse.addProduct(container);
+                warehouse.addProduct(crate("4"));
+                warehouse.updateProductPrice(container.uuid(), new BigDecimal("99"));
+                warehouse.addProduct(crate("5"));
+
+                assertThat(planner.getGroups())
+                        .extracting(g -> g.getTotalWeight().stripTrailingZeros().toPlainString())
+                        .containsExactlyInAnyOrder("100000000000000000000", "9");
+
+                warehouse.remove(container.uuid());
+                assertThat(planner.groupCount()).isEqualTo(1);
+                assertThat(planner.reoptimize(Duration.ofSeconds(1))).isFalse();
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should finish the commit and keep other subscribers in sync when a listener throws")
+        void should_isolateFailure_when_listenerThrows() {
+            WarehouseListener failing = new WarehouseListener() {
+                @Override
+                public void productAdded(Product product) {
+                    throw new IllegalStateException("Listener failed");
+                }
+            };
+            List<Throwable> reported = new ArrayList<>();
+            Thread current = Thread.currentThread();
+            Thread.UncaughtExceptionHandler previous = current.getUncaughtExceptionHandler();
+            current.setUncaughtExceptionHandler((t, e) -> reported.add(e));
+            warehouse.addListener(failing);
+            try (IncrementalShippingPlanner planner = new IncrementalShippingPlanner(warehouse, new BigDecimal("10"))) {
+                Product crate = crate("4");
+                warehouse.addProduct(crate);
+
+                assertThat(warehouse.getProductById(crate.uuid())).isPresent();
+                assertThat(warehouse.countMatching(of("Bulk"))).isEqualTo(1);
+                assertThat(planner.groupCount()).isEqualTo(1);
+                assertThat(reported).singleElement().extracting(Throwable::getMessage).isEqualTo("Listener failed");
+            } finally {
+                warehouse.removeListener(failing);
+                current.setUncaughtExceptionHandler(previous);
+            }
+        }
+
+        @Test
+        @DisplayName("❌ should reject a re-optimization interval under a millisecond")
+        void should_throwException_when_intervalTooShort() {
+            try (IncrementalShippingPlanner planner = new IncrementalShippingPlanner(warehouse, new BigDecimal("10"))) {
+                assertThatThrownBy(() -> planner.startReoptimizing(Duration.ofNanos(500), Duration.ofMillis(10)))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessage("Interval must be at least a millisecond.");
+            }
+        }
+    }
+
+    /**
+     * Test suite for {@link ShippingCosts}.
+     */
+    @Nested
+    @DisplayName("ShippingCosts")
+    class ShippingCostsTests {
+
+        @Test
+        @DisplayName("✅ should match per-item sums exactly, scale included")
+        void should_matchPerItemSums_when_weightsHaveMixedScales() {
+            SplittableRandom random = new SplittableRandom(11);
+            List<Shippable> items = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                BigDecimal weight = BigDecimal.valueOf(random.nextInt(1, 1000), random.nextInt(0, 4));
+                if (random.nextBoolean()) {
+                    items.add(new FoodProduct(UUID.randomUUID(), "Food " + i, of("Bulk"), BigDecimal.ONE, LocalDate.now().plusDays(30), weight));
+                } else {
+                    items.add(new ElectronicsProduct(UUID.randomUUID(), "Device " + i, of("Electronics"), BigDecimal.TEN, 12, weight));
+                }
+            }
+            items.add(new ElectronicsProduct(UUID.randomUUID(), "Exactly five", of("Electronics"), BigDecimal.TEN, 12, new BigDecimal("5.000")));
+
+            ShippingCosts.Totals batch = ShippingCosts.totals(items);
+            ShippingCosts.Totals perItem = ShippingCosts.scalarTotals(items);
+
+            assertThat(batch.totalWeight()).isEqualTo(perItem.totalWeight());
+            assertThat(batch.totalShippingCost()).isEqualTo(perItem.totalShippingCost());
+        }
+
+        @Test
+        @DisplayName("✅ should ask subclasses of the known products for their own cost")
+        void should_useOverriddenCost_when_productIsSubclassed() {
+            FoodProduct frozen = new FoodProduct(UUID.randomUUID(), "Ice cream", of("Frozen"), BigDecimal.ONE, LocalDate.now().plusDays(30), new BigDecimal("2")) {
+                @Override
+                public BigDecimal calculateShippingCost() {
+                    return super.calculateShippingCost().add(new BigDecimal("30"));
+                }
+            };
+            List<Shippable> items = List.of(
+                    frozen,
+                    new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), BigDecimal.ONE, LocalDate.now().plusDays(3), new BigDecimal("1.5")));
+
+            assertThat(ShippingCosts.totals(items).totalShippingCost()).isEqualByComparingTo("205");
+            assertThat(ShippingCosts.totals(items)).isEqualTo(ShippingCosts.scalarTotals(items));
+        }
+
+        @Test
+        @DisplayName("✅ should ask other shippables for their own cost")
+        void should_useItemCost_when_shippableTypeIsUnknown() {
+            Shippable pallet = new Shippable() {
+                @Override
+                public BigDecimal calculateShippingCost() {
+                    return new BigDecimal("12.345");
+                }
+
+                @Override
+                public BigDecimal weight() {
+                    return new BigDecimal("100");
+                }
+
+                @Override
+                public BigDecimal price() {
+                    return BigDecimal.ONE;
+                }
+            };
+            List<Shippable> items = List.of(
+                    pallet,
+                    new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), BigDecimal.ONE, LocalDate.now().plusDays(3), new BigDecimal("1.5")),
+                    new ElectronicsProduct(UUID.randomUUID(), "TV", of("Electronics"), BigDecimal.TEN, 12, new BigDecimal("9")));
+
+            ShippingCosts.Totals totals = ShippingCosts.totals(items);
+
+            assertThat(totals.totalWeight()).isEqualTo(new BigDecimal("110.5"));
+            assertThat(totals.totalShippingCost()).isEqualTo(new BigDecimal("215.345"));
+        }
+    }
+
+    /**
+     * Test suite for {@link PriceSketch} and the sketches kept by {@link Warehouse}.
+     */
+    @Nested
+    @DisplayName("Price sketches")
+    class PriceSketchTests {
+
+        Warehouse warehouse;
+
+        @BeforeEach
+        void setUp() {
+            warehouse = Warehouse.getInstance("TestWarehouse");
+            warehouse.clearProducts();
+        }
+
+        @AfterEach
+        void tearDown() {
+            warehouse.clearProducts();
+        }
+
+        @Test
+        @DisplayName("✅ should estimate quantiles and distinct prices, also after merging")
+        void should_estimateWithinBounds_when_sketchesAreMerged() {
+            SplittableRandom random = new SplittableRandom(5);
+            PriceSketch left = new PriceSketch();
+            PriceSketch right = new PriceSketch();
+            for (int i = 0; i < 100_000; i++) {
+                // 5000 different prices from 0.01 to 50.00, each on both scales.
+                BigDecimal price = BigDecimal.valueOf(random.nextInt(1, 5001), 2);
+                (i % 2 == 0 ? left : right).add(i % 3 == 0 ? price.setScale(3) : price);
+            }
+
+            PriceSketch merged = left.copy().merge(right);
+
+            assertThat(merged.count()).isEqualTo(100_000);
+            assertThat(merged.quantile(0.5)).get().satisfies(p -> assertThat(p.doubleValue()).isBetween(24.0, 26.0));
+            assertThat(merged.quantile(0.9)).get().satisfies(p -> assertThat(p.doubleValue()).isBetween(44.0, 46.0));
+            assertThat(merged.distinctCount()).isBetween(4750L, 5250L);
+            assertThatThrownBy(() -> merged.merge(new PriceSketch(new PriceSketch.Accuracy(100, 10))))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        @Test
+        @DisplayName("✅ should follow additions, price changes and removals per category")
+        void should_trackLivePrices_when_warehouseChanges() {
+            List<Product> milk = new ArrayList<>();
+            for (int i = 1; i <= 100; i++) {
+                Product p = new FoodProduct(UUID.randomUUID(), "Milk " + i, of("Dairy"), BigDecimal.valueOf(i), LocalDate.now().plusDays(3), BigDecimal.ONE);
+                milk.add(p);
+                warehouse.addProduct(p);
+            }
+            warehouse.addProduct(new ElectronicsProduct(UUID.randomUUID(), "TV", of("Electronics"), new BigDecimal("5000"), 12, BigDecimal.TEN));
+            WarehouseAnalyzer analyzer = new WarehouseAnalyzer(warehouse);
+
+            assertThat(analyzer.priceQuantile(of("Dairy"), 0.5)).contains(new BigDecimal("50.0"));
+            assertThat(analyzer.priceQuantile(of("Dairy"), 1.0)).contains(new BigDecimal("100.0"));
+            assertThat(analyzer.priceQuantile(null, 1.0)).contains(new BigDecimal("5000.0"));
+            assertThat(analyzer.distinctPriceCount(of("Dairy"))).isBetween(95L, 105L);
+
+            // Remove the cheaper half and double what is left.
+            for (int i = 0; i < 50; i++) {
+                warehouse.remove(milk.get(i).uuid());
+            }
+            for (int i = 50; i < 100; i++) {
+                warehouse.updateProductPrice(milk.get(i).uuid(), BigDecimal.valueOf(2L * (i + 1)));
+            }
+
+            // Old prices linger until a tenth of the category has changed, then the sketch is rebuilt.
+            assertThat(analyzer.priceQuantile(of("Dairy"), 0.5)).get()
+                    .satisfies(p -> assertThat(p.doubleValue()).isBetween(140.0, 160.0));
+            assertThat(analyzer.priceQuantile(of("Dairy"), 1.0)).contains(new BigDecimal("200.0"));
+            assertThat(analyzer.distinctPriceCount(of("Dairy"))).isBetween(47L, 58L);
+            try (Warehouse.Snapshot snapshot = warehouse.snapshot()) {
+                assertThat(new WarehouseAnalyzer(snapshot).priceQuantile(of("Dairy"), 0.0)).contains(new BigDecimal("102.0"));
+            }
+            assertThat(analyzer.priceQuantile(of("Toys"), 0.5)).isEmpty();
+        }
+
+        @Test
+        @DisplayName("✅ should never show part of a commit that clears the warehouse")
+        void should_readWholeCommits_when_clearedConcurrently() throws InterruptedException {
+            WarehouseAnalyzer live = new WarehouseAnalyzer(warehouse);
+            AtomicInteger torn = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1);
+            Thread reader = new Thread(() -> {
+                while (done.getCount() > 0) {
+                    // Product i costs i and has a category of its own, so a whole commit holds
+                    // prices 1 to n and its most expensive product costs as much as it counts.
+                    PriceSketch sketch = live.priceSketch(null);
+                    long highest = sketch.quantile(1.0).map(BigDecimal::longValue).orElse(0L);
+                    if (highest != sketch.count()) {
+                        torn.incrementAndGet();
+                    }
+                }
+            });
+            reader.start();
+            try {
+                for (int round = 0; round < 200; round++) {
+                    for (int i = 1; i <= 40; i++) {
+                        warehouse.addProduct(new FoodProduct(UUID.randomUUID(), "Sketched", of("Sketched " + i), BigDecimal.valueOf(i), LocalDate.now().plusDays(3), BigDecimal.ONE));
+                    }
+                    warehouse.clearProducts();
+                }
+            } finally {
+                done.countDown();
+                reader.join();
+            }
+            assertThat(torn).hasValue(0);
+        }
+    }
+
+    /**
+     * Test suite for {@link PriceHistory}.
+     */
+    @Nested
+    @DisplayName("A PriceHistory")
+    class PriceHistoryTests {
+
+        Warehouse warehouse;
+        AtomicLong now = new AtomicLong(1_700_000_000_000L);
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(now.get());
+            }
+        };
+
+        @BeforeEach
+        void setUp() {
+            warehouse = Warehouse.getInstance("TestWarehouse");
+            warehouse.clearProducts();
+        }
+
+        @AfterEach
+        void tearDown() {
+            warehouse.clearProducts();
+        }
+
+        private Instant at(long millis) {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Test
+        @DisplayName("✅ should answer prices and valuations as of earlier times")
+        void should_reportPastValuation_when_pricesChangedSince() {
+            Product milk = new FoodProduct(UUID.randomUUID(), "Milk", of("Dairy"), new BigDecimal("10.00"), LocalDate.now().plusDays(3), BigDecimal.ONE);
+            warehouse.addProduct(milk);
+            long t0 = now.get();
+
+            try (PriceHistory history = new PriceHistory(warehouse, clock)) {
+                long t1 = now.addAndGet(1_000);
+                Product tv = new ElectronicsProduct(UUID.randomUUID(), "TV", of("Electronics"), new BigDecimal("500.00"), 12, BigDecimal.TEN);
+                warehouse.addProduct(tv);
+                long t2 = now.addAndGet(1_000);
+                warehouse.updateProductPrice(milk.uuid(), new BigDecimal("12.50"));
+                long t3 = now.addAndGet(1_000);
+                warehouse.remove(tv.uuid());
+
+                assertThat(history.priceAt(milk.uuid(), at(t0 - 1))).isEmpty();
+                assertThat(history.priceAt(milk.uuid(), at(t1))).contains(new BigDecimal("10.00"));
+                assertThat(history.priceAt(milk.uuid(), at(t2))).contains(new BigDecimal("12.50"));
+                assertThat(history.priceAt(tv.uuid(), at(t3))).isEmpty();
+
+                assertThat(history.valuationAt(at(t1))).isEqualTo(new BigDecimal("510.00"));
+                assertThat(history.valuationAt(at(t2 + 500))).isEqualTo(new BigDecimal("512.50"));
+                assertThat(history.valuationSeries(at(t0), at(t3), Duration.ofSeconds(1)))
+                        .extracting(PriceHistory.Valuation::value)
+                        .containsExactly(new BigDecimal("10.00"), new BigDecimal("510.00"), new BigDecimal("512.50"), new BigDecimal("12.50"));
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should store regular repricing in a few bytes per change")
+        void should_compressHistory_when_repricedAtSteadyPace() {
+            Product coffee = new FoodProduct(UUID.randomUUID(), "Coffee", of("Pantry"), new BigDecimal("40.00"), LocalDate.now().plusDays(300), BigDecimal.ONE);
+            SplittableRandom random = new SplittableRandom(9);
+            List<BigDecimal> prices = new ArrayList<>();
+
+            try (PriceHistory history = new PriceHistory(warehouse, clock)) {
+                long start = now.get();
+                warehouse.addProduct(coffee);
+                prices.add(coffee.price());
+                for (int i = 1; i < 1_000; i++) {
+                    now.addAndGet(60_000);
+                    BigDecimal price = prices.get(i - 1).add(BigDecimal.valueOf((i % 2 == 0 ? 1 : -1) * random.nextInt(1, 51), 2));
+                    warehouse.updateProductPrice(coffee.uuid(), price);
+                    prices.add(price);
+                }
+
+                assertThat(history.entryCount()).isEqualTo(1_000);
+                assertThat(history.encodedBytes()).isLessThan(4 * 1_000);
+                for (int i : new int[]{0, 63, 64, 65, 500, 999}) {
+                    assertThat(history.priceAt(coffee.uuid(), at(start + i * 60_000L + 30_000))).contains(prices.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test suite for {@link ProductCodec}.
+     */
+    @Nested
+    @DisplayName("A ProductCodec")
+    class ProductCodecTests {
+
+        private final FoodProduct cheese = new FoodProduct(UUID.randomUUID(), "Smör & Ost 🧀", of("Dairy"), new BigDecimal("89.90"), LocalDate.of(2031, 2, 3), new BigDecimal("0.250"));
+        private final FoodProduct salt = new FoodProduct(UUID.randomUUID(), "Salt", of("Pantry"), new BigDecimal("12"), null, BigDecimal.ONE);
+        private final ElectronicsProduct radio = new ElectronicsProduct(UUID.randomUUID(), "Radio", of("Electronics"), new BigDecimal("1299.00"), 24, new BigDecimal("2.4"));
+
+        @Test
+        @DisplayName("✅ should round-trip every field, scale included")
+        void should_restoreAllFields_when_decodingEncodedProducts() {
+            ByteBuffer buffer = ProductCodec.encodeAll(List.of(cheese, salt, radio));
+
+            List<Product> decoded = ProductCodec.decodeAll(buffer);
+
+            assertThat(buffer.hasRemaining()).isFalse();
+            assertThat(decoded).extracting(Product::uuid, Product::name, Product::getCategory, Product::price)
+                    .containsExactly(
+                            tuple(cheese.uuid(), cheese.name(), cheese.getCategory(), cheese.price()),
+                            tuple(salt.uuid(), salt.name(), salt.getCategory(), salt.price()),
+                            tuple(radio.uuid(), radio.name(), radio.getCategory(), radio.price()));
+            assertThat(decoded.get(0)).isInstanceOfSatisfying(FoodProduct.class, f -> {
+                assertThat(f.getExpirationDate()).isEqualTo(cheese.getExpirationDate());
+                assertThat(f.weight()).isEqualTo(new BigDecimal("0.250"));
+            });
+            assertThat(((FoodProduct) decoded.get(1)).getExpirationDate()).isNull();
+            assertThat(decoded.get(2)).isInstanceOfSatisfying(ElectronicsProduct.class, e -> {
+                assertThat(e.getWarrantyMonths()).isEqualTo(24);
+                assertThat(e.weight()).isEqualTo(new BigDecimal("2.4"));
+            });
+        }
+
+        @Test
+        @DisplayName("✅ should read single fields in place with a flyweight view")
+        void should_readFieldsInPlace_when_usingView() {
+            ProductCodec codec = new ProductCodec();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1024).order(ByteOrder.BIG_ENDIAN);
+            for (Product p : List.of(cheese, salt, radio)) {
+                codec.encode(p, buffer);
+            }
+            int end = buffer.position();
+
+            ProductCodec.View view = codec.view();
+            long totalCents = 0;
+            String found = null;
+            for (int offset = 0; offset < end; offset += view.size()) {
+                view.wrap(buffer, offset);
+                totalCents += view.price().movePointRight(2).longValueExact();
+                if (view.hasUuid(radio.uuid())) {
+                    found = view.name() + "/" + view.category().getName() + "/" + view.warrantyMonths();
+                }
+            }
+
+            assertThat(totalCents).isEqualTo(8990 + 1200 + 129900);
+            assertThat(found).isEqualTo("Radio/Electronics/24");
+
+            buffer.put(0, (byte) 9);
+            assertThatThrownBy(() -> view.wrap(buffer, 0))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("version");
+        }
+
+        @Test
+        @DisplayName("✅ should write a negative price scale as a whole number")
+        void should_normalizeScale_when_priceHasNegativeScale() {
+            FoodProduct bulk = new FoodProduct(UUID.randomUUID(), "Bulk salt", of("Pantry"), new BigDecimal("1E+3"), null, new BigDecimal("5E+1"));
+
+            FoodProduct decoded = (FoodProduct) ProductCodec.decodeAll(ProductCodec.encodeAll(List.of(bulk))).get(0);
+
+            assertThat(decoded.price()).isEqualTo(new BigDecimal("1000"));
+            assertThat(decoded.weight()).isEqualTo(new BigDecimal("50"));
+        }
+
+        @Test
+        @DisplayName("❌ should reject what the format cannot hold with an IllegalArgumentException")
+        void should_throwIllegalArgument_when_productDoesNotFit() {
+            ProductCodec codec = new ProductCodec();
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            FoodProduct farFuture = new FoodProduct(UUID.randomUUID(), "Honey", of("Pantry"), BigDecimal.TEN, LocalDate.MAX, BigDecimal.ONE);
+            FoodProduct subclass = new FoodProduct(UUID.randomUUID(), "Organic honey", of("Pantry"), BigDecimal.TEN, null, BigDecimal.ONE) {
+            };
+            FoodProduct tooPrecise = new FoodProduct(UUID.randomUUID(), "Saffron", of("Pantry"), new BigDecimal("1E-200"), null, BigDecimal.ONE);
+
+            assertThatThrownBy(() -> codec.encode(farFuture, buffer))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Expiration date does not fit");
+            assertThatThrownBy(() -> codec.encode(subclass, buffer))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Unsupported product type");
+            assertThatThrownBy(() -> codec.encode(tooPrecise, buffer))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Price scale does not fit");
+            assertThat(buffer.position()).isZero();
+        }
+    }
+
+    /**
+     * Test suite for {@link ReplicationPrimary} and {@link WarehouseReplica}.
+     */
+    @Nested
+    @DisplayName("Replication")
+    class ReplicationTests {
+
+        Warehouse warehouse;
+
+        @BeforeEach
+        void setUp() {
+            warehouse = Warehouse.getInstance("TestWarehouse");
+            warehouse.clearProducts();
+        }
+
+        @AfterEach
+        void tearDown() {
+            warehouse.clearProducts();
+        }
+
+        private Product milk(int i) {
+            return new FoodProduct(UUID.randomUUID(), "Milk " + i, of("Dairy"), BigDecimal.valueOf(10 + i), LocalDate.now().plusDays(5), BigDecimal.ONE);
+        }
+
+        private List<String> describe(List<Product> products) {
+            return products.stream().map(p -> p.uuid() + " " + p.name() + " " + p.price()).sorted().toList();
+        }
+
+        @Test
+        @DisplayName("✅ should stream additions, price updates and removals to a replica")
+        void should_mirrorPrimary_when_changesAreStreamed() throws Exception {
+            for (int i = 0; i < 5; i++) warehouse.addProduct(milk(i));
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+            try (ReplicationPrimary primary = ReplicationPrimary.start(warehouse, address, 4, 2, Clock.systemUTC());
+                 WarehouseReplica replica = new WarehouseReplica(primary.address())) {
+                assertThat(replica.awaitSequence(0, Duration.ofSeconds(5))).isTrue();
+
+                List<Product> added = new ArrayList<>();
+                for (int i = 5; i < 200; i++) {
+                    Product p = milk(i);
+                    added.add(p);
+                    warehouse.addProduct(p);
+                }
+                warehouse.updateProductPrice(added.get(0).uuid(), new BigDecimal("99.95"));
+                warehouse.remove(added.get(1).uuid());
+
+                assertThat(replica.awaitSequence(primary.latestSequence(), Duration.ofSeconds(5))).isTrue();
+                assertThat(describe(replica.getProducts())).isEqualTo(describe(Warehouse.getProducts()));
+                assertThat(replica.getProductById(added.get(0).uuid())).get().extracting(Product::price).isEqualTo(new BigDecimal("99.95"));
+                assertThat(replica.analyzer().getInventoryStatistics().totalValue())
+                        .isEqualByComparingTo(new WarehouseAnalyzer(warehouse).getInventoryStatistics().totalValue());
+
+                WarehouseReplica.Lag lag = replica.lag();
+                assertThat(lag.changesBehind()).isZero();
+                assertThat(lag.timeBehind()).isZero();
+                assertThat(lag.snapshotsReceived()).isGreaterThanOrEqualTo(1);
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should catch up from a snapshot after the primary restarts")
+        void should_resyncFromSnapshot_when_primaryRestarts() throws Exception {
+            warehouse.addProduct(milk(1));
+            ReplicationPrimary first = ReplicationPrimary.start(warehouse, 0);
+            InetSocketAddress address = first.address();
+
+            try (WarehouseReplica replica = new WarehouseReplica(address)) {
+                warehouse.addProduct(milk(2));
+                assertThat(replica.awaitSequence(first.latestSequence(), Duration.ofSeconds(5))).isTrue();
+                first.close();
+
+                // Changes while no primary is running never reach a log.
+                warehouse.addProduct(milk(3));
+                warehouse.remove(Warehouse.getProducts().get(0).uuid());
+
+                try (ReplicationPrimary second = ReplicationPrimary.start(warehouse, address, 1_000, 64, Clock.systemUTC())) {
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                    while (replica.lag().snapshotsReceived() < 2 && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    assertThat(replica.lag().snapshotsReceived()).isEqualTo(2);
+                    assertThat(describe(replica.getProducts())).isEqualTo(describe(Warehouse.getProducts()));
+                    assertThat(second.snapshotsSent()).isEqualTo(1);
+                }
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should not continue from a restarted primary's numbers once they pass its own")
+        void should_resync_when_restartedPrimaryOvertakesAppliedSequence() throws Exception {
+            ReplicationPrimary first = ReplicationPrimary.start(warehouse, 0);
+            InetSocketAddress address = first.address();
+            List<Product> before = List.of(milk(0), milk(1), milk(2));
+
+            try (WarehouseReplica replica = new WarehouseReplica(address)) {
+                before.forEach(warehouse::addProduct);
+                assertThat(replica.awaitSequence(3, Duration.ofSeconds(5))).isTrue();
+                first.close();
+                warehouse.remove(before.get(0).uuid());
+
+                try (ReplicationPrimary second = ReplicationPrimary.start(warehouse, address, 1_000, 64, Clock.systemUTC())) {
+                    for (int i = 0; i < 5; i++) {
+                        warehouse.addProduct(milk(10 + i));
+                    }
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                    // The primary counts a snapshot after flushing it, so the replica can be first to see it.
+                    while ((replica.lag().snapshotsReceived() < 2 || second.snapshotsSent() < 1
+                            || !replica.awaitSequence(second.latestSequence(), Duration.ofMillis(10)))
+                            && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    assertThat(describe(replica.getProducts())).isEqualTo(describe(Warehouse.getProducts()));
+                    assertThat(replica.lag().changesBehind()).isZero();
+                    assertThat(second.snapshotsSent()).isEqualTo(1);
+                }
+            }
+        }
+
+        @Test
+        @DisplayName("❌ should skip and report a change that cannot be encoded and keep replicating")
+        void should_skipAndContinue_when_productCannotBeReplicated() throws Exception {
+            try (ReplicationPrimary primary = ReplicationPrimary.start(warehouse, 0);
+                 WarehouseReplica replica = new WarehouseReplica(primary.address())) {
+                Product repriced = milk(1);
+                warehouse.addProduct(repriced);
+                assertThat(replica.awaitSequence(primary.latestSequence(), Duration.ofSeconds(5))).isTrue();
+
+                Product farFuture = new FoodProduct(UUID.randomUUID(), "Bulk salt", of("Pantry"), BigDecimal.TEN, LocalDate.MAX, BigDecimal.ONE);
+                warehouse.addProduct(farFuture);
+                // An update the codec rejects must not leave the older version on the replica.
+                warehouse.updateProductPrice(repriced.uuid(), new BigDecimal("1E-200"));
+                Product after = milk(2);
+                warehouse.addProduct(after);
+
+                assertThat(replica.awaitSequence(primary.latestSequence(), Duration.ofSeconds(5))).isTrue();
+                assertThat(replica.getProducts()).extracting(Product::uuid).containsExactly(after.uuid());
+                assertThat(replica.lastSkipped()).get().asString()
+                        .startsWith("Cannot replicate " + repriced.uuid())
+                        .contains("Price scale does not fit");
+                assertThat(primary.productsSkipped()).isEqualTo(2);
+
+                // A snapshot leaves out the same products and still reaches the replica.
+                try (WarehouseReplica late = new WarehouseReplica(primary.address())) {
+                    assertThat(late.awaitSequence(primary.latestSequence(), Duration.ofSeconds(5))).isTrue();
+                    assertThat(late.getProducts()).extracting(Product::uuid).containsExactly(after.uuid());
+                    assertThat(late.lastSkipped()).isPresent();
+                }
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("A NamePool")
+    class NamePoolTests {
+
+        @Test
+        @DisplayName("✅ should share one instance per name and free names no longer used")
+        void should_deduplicateAndRelease_when_namesInterned() throws InterruptedException {
+            NamePool pool = new NamePool();
+            String first = pool.intern(new String("Milk 1L"));
+            for (int i = 0; i < 10_000; i++) {
+                assertThat(pool.intern(new String("Milk 1L"))).isSameAs(first);
+            }
+            assertThat(pool.intern(null)).isNull();
+
+            for (int i = 0; i < 5_000; i++) {
+                pool.intern("Discontinued " + i);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pool.size() > 1 && System.nanoTime() < deadline) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertThat(pool.size()).isEqualTo(1);
+            assertThat(pool.intern("Milk 1L")).isSameAs(first);
+
+            Product milk = new FoodProduct(UUID.randomUUID(), new String("Milk 1L"), of("Dairy"), BigDecimal.ONE, LocalDate.now(), BigDecimal.ONE);
+            Product other = new FoodProduct(UUID.randomUUID(), new String("Milk 1L"), of("Dairy"), BigDecimal.TEN, LocalDate.now(), BigDecimal.ONE);
+            assertThat(other.name()).isSameAs(milk.name());
+            assertThat(milk.withPrice(BigDecimal.TEN).name()).isSameAs(milk.name());
+        }
+
+        @Test
+        @DisplayName("🔒 should hand every thread the same instance of a name")
+        void should_shareInstances_when_internedConcurrently() throws InterruptedException {
+            NamePool pool = new NamePool();
+            int threads = 8;
+            int perThread = 500;
+            String[][] interned = new String[threads][perThread];
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers.add(Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        interned[thread][i] = pool.intern(new String("Name " + i));
+                    }
+                }));
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            for (String[] row : interned) {
+                for (int i = 0; i < perThread; i++) {
+                    assertThat(row[i]).isSameAs(interned[0][i]);
+                }
+            }
+            assertThat(pool.size()).isEqualTo(perThread);
+        }
+
+        @Test
+        @DisplayName("✅ should find the same products as a lower-cased contains search")
+        void should_matchStringSearch_when_searchingByName() {
+            Warehouse warehouse = Warehouse.getInstance("NamePoolWarehouse");
+            warehouse.clearProducts();
+            List<String> names = List.of("Milk 1L", "MILK chocolate", "Crème Brûlée", "CRÈME fraîche", "Молоко", "Soy drink", "Straße");
+            for (int i = 0; i < 50; i++) {
+                warehouse.addProduct(new FoodProduct(UUID.randomUUID(), names.get(i % names.size()), of("Dairy"),
+                        BigDecimal.ONE, LocalDate.now().plusDays(1), BigDecimal.ONE));
+            }
+            WarehouseAnalyzer analyzer = new WarehouseAnalyzer(warehouse);
+
+            try {
+                for (String term : List.of("milk", "Crème", "ÈME", "молоко", "ОЛО", "e", "ß", "", "tea")) {
+                    String lower = term.toLowerCase(Locale.ROOT);
+                    assertThat(analyzer.searchProductsByName(term))
+                            .as(term)
+                            .containsExactlyInAnyOrderElementsOf(Warehouse.getProducts().stream()
+                                    .filter(p -> p.name().toLowerCase(Locale.ROOT).contains(lower))
+                                    .toList());
+                }
+                assertThat(analyzer.searchProductsByName("milk")).hasSize(15);
+            } finally {
+                warehouse.clearProducts();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("A PriceRanking")
+    class PriceRankingTests {
+
+        Warehouse warehouse;
+
+        @BeforeEach
+        void setUp() {
+            warehouse = Warehouse.getInstance("TestWarehouse");
+            warehouse.clearProducts();
+        }
+
+        @AfterEach
+        void tearDown() {
+            warehouse.clearProducts();
+        }
+
+        @Test
+        @DisplayName("✅ should match a sorted scan through additions, price changes and removals of top products")
+        void should_matchSortedScan_when_warehouseChanges() {
+            SplittableRandom random = new SplittableRandom(11);
+            List<Category> categories = List.of(of("Dairy"), of("Bakery"), of("Electronics"));
+            List<UUID> ids = new ArrayList<>();
+            WarehouseAnalyzer live = new WarehouseAnalyzer(warehouse);
+            WarehouseAnalyzer scanning = new WarehouseAnalyzer(warehouse, Warehouse::getProducts);
+
+            for (int step = 0; step < 2_000; step++) {
+                int action = random.nextInt(10);
+                if (action < 5 || ids.isEmpty()) {
+                    Product p = new FoodProduct(UUID.randomUUID(), "Item " + step, categories.get(random.nextInt(3)),
+                            BigDecimal.valueOf(random.nextInt(1, 200), 1), LocalDate.now().plusDays(5), BigDecimal.ONE);
+                    warehouse.addProduct(p);
+                    ids.add(p.uuid());
+                } else if (action < 8) {
+                    warehouse.updateProductPrice(ids.get(random.nextInt(ids.size())), BigDecimal.valueOf(random.nextInt(1, 200), 1));
+                } else {
+                    // Mostly take out the current most expensive product to exercise the repair.
+                    UUID id = random.nextBoolean()
+                            ? live.findMostExpensiveProducts(null, 1).get(0).uuid()
+                            : ids.get(random.nextInt(ids.size()));
+                    warehouse.remove(id);
+                    ids.remove(id);
+                }
+
+                if (step % 50 == 0) {
+                    for (Category category : categories) {
+                        assertThat(live.findMostExpensiveProducts(category, 20)).isEqualTo(scanning.findMostExpensiveProducts(category, 20));
+                        assertThat(live.findCheapestProducts(category, 20)).isEqualTo(scanning.findCheapestProducts(category, 20));
+                    }
+                    assertThat(live.findMostExpensiveProducts(null, 5)).isEqualTo(scanning.findMostExpensiveProducts(null, 5));
+                }
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should report the extremes in the inventory statistics from the same version as the totals")
+        void should_reportExtremes_when_statisticsRequested() {
+            Product cheap = new FoodProduct(UUID.randomUUID(), "Bread", of("Bakery"), new BigDecimal("1.50"), LocalDate.now().plusDays(2), BigDecimal.ONE);
+            Product tv = new ElectronicsProduct(UUID.randomUUID(), "TV", of("Electronics"), new BigDecimal("800"), 24, BigDecimal.TEN);
+            Product laptop = new ElectronicsProduct(UUID.randomUUID(), "Laptop", of("Electronics"), new BigDecimal("1200"), 24, BigDecimal.ONE);
+            warehouse.addProduct(cheap);
+            warehouse.addProduct(tv);
+            warehouse.addProduct(laptop);
+            WarehouseAnalyzer analyzer = new WarehouseAnalyzer(warehouse);
+
+            assertThat(analyzer.getInventoryStatistics().mostExpensiveProduct()).isEqualTo(laptop);
+            warehouse.remove(laptop.uuid());
+            assertThat(analyzer.getInventoryStatistics().mostExpensiveProduct().uuid()).isEqualTo(tv.uuid());
+            warehouse.updateProductPrice(tv.uuid(), new BigDecimal("1.00"));
+            assertThat(analyzer.getInventoryStatistics().cheapestProduct().uuid()).isEqualTo(tv.uuid());
+            assertThat(analyzer.findMostExpensiveProducts(of("Electronics"), 5)).extracting(Product::uuid).containsExactly(tv.uuid());
+            assertThat(analyzer.findCheapestProducts(of("Dairy"), 5)).isEmpty();
+            assertThatThrownBy(() -> analyzer.findCheapestProducts(null, -1)).isInstanceOf(IllegalArgumentException.class);
+
+            WarehouseAnalyzer.InventoryStatistics stats = analyzer.getInventoryStatistics();
+            assertThat(stats.totalValue()).isEqualByComparingTo(stats.mostExpensiveProduct().price().add(stats.cheapestProduct().price()));
+
+            warehouse.clearProducts();
+            assertThat(analyzer.getInventoryStatistics().mostExpensiveProduct()).isNull();
+        }
+
+        @Test
+        @DisplayName("✅ should never rank part of a commit that clears the warehouse")
+        void should_readWholeCommits_when_clearedConcurrently() throws InterruptedException {
+            WarehouseAnalyzer live = new WarehouseAnalyzer(warehouse);
+            AtomicInteger torn = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1);
+            Thread reader = new Thread(() -> {
+                while (done.getCount() > 0) {
+                    // Products are added cheapest first, so any whole commit ranks prices 1, 2, 3, ...
+                    List<Product> cheapest = live.findCheapestProducts(null, 100);
+                    for (int i = 0; i < cheapest.size(); i++) {
+                        if (cheapest.get(i).price().intValue() != i + 1) {
+                            torn.incrementAndGet();
+                            break;
+                        }
+                    }
+                }
+            });
+            reader.start();
+            try {
+                for (int round = 0; round < 200; round++) {
+                    for (int i = 1; i <= 40; i++) {
+                        warehouse.addProduct(new FoodProduct(UUID.randomUUID(), "Ranked", of("Dairy"), BigDecimal.valueOf(i), LocalDate.now().plusDays(3), BigDecimal.ONE));
+                    }
+                    warehouse.clearProducts();
+                }
+            } finally {
+                done.countDown();
+                reader.join();
+            }
+            assertThat(torn).hasValue(0);
+        }
+    }
+
+    @Nested
+    @DisplayName("An ExpirySweeper")
+    class ExpirySweeperTests {
+
+        Warehouse warehouse;
+        LocalDate today = LocalDate.of(2030, 1, 10);
+        AtomicLong now = new AtomicLong(today.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli());
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(now.get());
+            }
+        };
+
+        @BeforeEach
+        void setUp() {
+            warehouse = Warehouse.getInstance("TestWarehouse");
+            warehouse.clearProducts();
+        }
+
+        @AfterEach
+        void tearDown() {
+            warehouse.clearProducts();
+        }
+
+        private Product food(String name, Category category, LocalDate expires) {
+            return new FoodProduct(UUID.randomUUID(), name, category, BigDecimal.ONE, expires, BigDecimal.ONE);
+        }
+
+        @Test
+        @DisplayName("✅ should archive and evict expired perishables in batches after their grace period")
+        void should_evictInBatches_when_gracePeriodPassed() {
+            for (int i = 0; i < 5; i++) {
+                warehouse.addProduct(food("Old milk " + i, of("Dairy"), today.minusDays(1)));
+            }
+            Product cheese = food("Cheese", of("Cheese"), today.minusDays(1));
+            Product fresh = food("Fresh milk", of("Dairy"), today.plusDays(2));
+            Product tv = new ElectronicsProduct(UUID.randomUUID(), "TV", of("Electronics"), BigDecimal.TEN, 12, BigDecimal.TEN);
+            warehouse.addProduct(cheese);
+            warehouse.addProduct(fresh);
+            warehouse.addProduct(tv);
+
+            ExpirySweeper.Settings settings = new ExpirySweeper.Settings(Duration.ofHours(6), Map.of(), 2, Duration.ofSeconds(1))
+                    .withGracePeriod(of("Cheese"), Duration.ofDays(30));
+            List<Product> archived = new ArrayList<>();
+            try (ExpirySweeper sweeper = new ExpirySweeper(warehouse, settings, archived::add, clock)) {
+                assertThat(sweeper.pending()).isEqualTo(7);
+                assertThat(sweeper.runOnce()).isZero();
+
+                now.addAndGet(Duration.ofHours(6).toMillis());
+                assertThat(sweeper.runOnce()).isEqualTo(2);
+                assertThat(sweeper.runOnce()).isEqualTo(2);
+                // A product repriced while waiting is still swept, one removed meanwhile is not.
+                List<Product> left = Warehouse.getProducts().stream().filter(p -> p.name().startsWith("Old milk")).toList();
+                warehouse.updateProductPrice(left.get(0).uuid(), BigDecimal.TEN);
+                warehouse.addProduct(food("Late milk", of("Dairy"), today.minusDays(2)));
+                Product gone = food("Gone milk", of("Dairy"), today.minusDays(2));
+                warehouse.addProduct(gone);
+                warehouse.remove(gone.uuid());
+                assertThat(sweeper.runOnce()).isEqualTo(2);
+                assertThat(sweeper.runOnce()).isZero();
+
+                assertThat(Warehouse.getProducts()).extracting(Product::name).containsExactlyInAnyOrder("Cheese", "Fresh milk", "TV");
+                assertThat(archived).hasSize(6).allSatisfy(p -> assertThat(((Perishable) p).expirationDate()).isBefore(today));
+                assertThat(sweeper.evictedCount()).isEqualTo(6);
+
+                now.addAndGet(Duration.ofDays(40).toMillis());
+                assertThat(sweeper.runOnce()).isEqualTo(2);
+                assertThat(Warehouse.getProducts()).extracting(Product::name).containsExactly("TV");
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should keep sweeping in the background and retry products the archive refused")
+        void should_sweepInBackground_when_started() throws InterruptedException {
+            AtomicInteger failures = new AtomicInteger(1);
+            List<Product> archived = new ArrayList<>();
+            ExpirySweeper.Settings settings = new ExpirySweeper.Settings(Duration.ZERO, Map.of(), 10, Duration.ofMillis(5));
+            try (ExpirySweeper sweeper = new ExpirySweeper(warehouse, settings, p -> {
+                if (failures.getAndDecrement() > 0) throw new IllegalStateException("Archive unavailable");
+                synchronized (archived) {
+                    archived.add(p);
+                }
+            }, clock)) {
+                for (int i = 0; i < 25; i++) {
+                    warehouse.addProduct(food("Yoghurt " + i, of("Dairy"), today.minusDays(3)));
+                }
+                sweeper.start();
+
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (sweeper.evictedCount() < 25 && System.nanoTime() < deadline) {
+                    Thread.sleep(5);
+                }
+                assertThat(warehouse.isEmpty()).isTrue();
+                assertThat(sweeper.failedSweeps()).isEqualTo(1);
+                assertThat(sweeper.evictedCount()).isEqualTo(25);
+                synchronized (archived) {
+                    assertThat(archived).hasSize(25);
+                }
+            }
+        }
+
+        @Test
+        @DisplayName("❌ should reject settings without a positive batch size")
+        void should_throwException_when_batchSizeNotPositive() {
+            assertThatThrownBy(() -> new ExpirySweeper.Settings(Duration.ZERO, Map.of(), 0, Duration.ofSeconds(1)))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> new ExpirySweeper.Settings(Duration.ZERO, null, 10, Duration.ofSeconds(1)))
+                    .isInstanceOf(NullPointerException.class)
+                    .hasMessage("Category grace periods cannot be null.");
+            assertThatThrownBy(() -> ExpirySweeper.Settings.DEFAULT.withGracePeriod(null, Duration.ZERO))
+                    .isInstanceOf(NullPointerException.class)
+                    .hasMessage("Category cannot be null.");
+            assertThatThrownBy(() -> ExpirySweeper.Settings.DEFAULT.withGracePeriod(of("Dairy"), null))
+                    .isInstanceOf(NullPointerException.class)
+                    .hasMessage("Grace period cannot be null.");
+        }
+
+        @Test
+        @DisplayName("🔒 should not evict a product changed while it was being archived")
+        void should_keepNewerVersion_when_changedDuringArchive() {
+            Product milk = food("Old milk", of("Dairy"), today.minusDays(1));
+            warehouse.addProduct(milk);
+            List<Product> archived = new ArrayList<>();
+            ExpirySweeper.Settings settings = new ExpirySweeper.Settings(Duration.ZERO, Map.of(), 10, Duration.ofSeconds(1));
+            try (ExpirySweeper sweeper = new ExpirySweeper(warehouse, settings, p -> {
+                archived.add(p);
+                if (archived.size() == 1) {
+                    // Another writer gets in between the check and the removal.
+                    warehouse.updateProductPrice(p.uuid(), BigDecimal.TEN);
+                }
+            }, clock)) {
+                assertThat(sweeper.runOnce()).isZero();
+                assertThat(warehouse.getProductById(milk.uuid())).get().extracting(Product::price).isEqualTo(BigDecimal.TEN);
+                assertThat(sweeper.evictedCount()).isZero();
+
+                assertThat(sweeper.runOnce()).isEqualTo(1);
+                assertThat(warehouse.getProductById(milk.uuid())).isEmpty();
+                assertThat(archived).extracting(Product::price).containsExactly(BigDecimal.ONE, BigDecimal.TEN);
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should keep perishables for good when the grace period is too long to reach")
+        void should_neverEvict_when_gracePeriodOverflows() {
+            ExpirySweeper.Settings settings = new ExpirySweeper.Settings(Duration.ofSeconds(Long.MAX_VALUE), Map.of(), 10, Duration.ofSeconds(1))
+                    .withGracePeriod(of("Cheese"), Duration.ofDays(200_000_000_000L));
+            try (ExpirySweeper sweeper = new ExpirySweeper(warehouse, settings, null, clock)) {
+                warehouse.addProduct(food("Old milk", of("Dairy"), today.minusDays(1)));
+                warehouse.addProduct(food("Old cheese", of("Cheese"), today.minusDays(1)));
+                assertThat(sweeper.pending()).isEqualTo(2);
+
+                now.addAndGet(Duration.ofDays(365_000).toMillis());
+                assertThat(sweeper.runOnce()).isZero();
+                assertThat(Warehouse.getProducts()).hasSize(2);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("The category rollups")
+    class CategoryRollupsTests {
+
+        Warehouse warehouse;
+
+        @BeforeEach
+        void setUp() {
+            warehouse = Warehouse.getInstance("TestWarehouse");
+            warehouse.clearProducts();
+        }
+
+        @AfterEach
+        void tearDown() {
+            warehouse.clearProducts();
+        }
+
+        @Test
+        @DisplayName("✅ should equal the batch weighted averages after any sequence of changes")
+        void should_matchBatchComputation_when_randomChangesApplied() {
+            List<Category> categories = List.of(of("Dairy"), of("Bakery"), of("Electronics"), of("Toys"));
+            WarehouseAnalyzer live = new WarehouseAnalyzer(warehouse);
+            WarehouseAnalyzer batch = new WarehouseAnalyzer(warehouse, Warehouse::getProducts);
+
+            for (long seed = 1; seed <= 20; seed++) {
+                SplittableRandom random = new SplittableRandom(seed);
+                List<UUID> ids = new ArrayList<>();
+                for (int step = 0; step < 300; step++) {
+                    int action = random.nextInt(10);
+                    if (action < 5 || ids.isEmpty()) {
+                        Category category = categories.get(random.nextInt(categories.size()));
+                        BigDecimal price = BigDecimal.valueOf(random.nextInt(0, 100_000), random.nextInt(0, 4));
+                        // Zero weights exercise the fallback to the plain average.
+                        BigDecimal weight = random.nextInt(4) == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(random.nextInt(1, 5_000), 3);
+                        Product p = random.nextBoolean()
+                                ? new FoodProduct(UUID.randomUUID(), "Food " + step, category, price, LocalDate.now().plusDays(5), weight)
+                                : new ElectronicsProduct(UUID.randomUUID(), "Device " + step, category, price, 12, weight);
+                        warehouse.addProduct(p);
+                        ids.add(p.uuid());
+                    } else if (action < 8) {
+                        warehouse.updateProductPrice(ids.get(random.nextInt(ids.size())), BigDecimal.valueOf(random.nextInt(0, 100_000), 2));
+                    } else {
+                        warehouse.remove(ids.remove(random.nextInt(ids.size())));
+                    }
+
+                    assertThat(live.calculateWeightedAveragePriceByCategory())
+                            .as("seed %d, step %d", seed, step)
+                            .isEqualTo(batch.calculateWeightedAveragePriceByCategory());
+                }
+                for (Category category : categories) {
+                    assertThat(live.calculateWeightedAveragePrice(category)).isEqualTo(batch.calculateWeightedAveragePrice(category));
+                }
+                warehouse.clearProducts();
+                assertThat(live.calculateWeightedAveragePriceByCategory()).isEmpty();
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should never show part of a commit that clears the warehouse")
+        void should_readWholeCommits_when_clearedConcurrently() throws InterruptedException {
+            List<Category> categories = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                categories.add(of("Rollup " + i));
+            }
+            WarehouseAnalyzer live = new WarehouseAnalyzer(warehouse);
+            AtomicInteger torn = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1);
+            Thread reader = new Thread(() -> {
+                while (done.getCount() > 0) {
+                    // Products are added one category at a time, so any whole commit shows a prefix.
+                    Map<Category, BigDecimal> averages = live.calculateWeightedAveragePriceByCategory();
+                    int seen = (int) categories.stream().filter(averages::containsKey).count();
+                    if (!averages.keySet().containsAll(categories.subList(0, seen))) {
+                        torn.incrementAndGet();
+                    }
+                }
+            });
+            reader.start();
+            try {
+                for (int round = 0; round < 200; round++) {
+                    for (Category category : categories) {
+                        warehouse.addProduct(new FoodProduct(UUID.randomUUID(), "Rolled", category, BigDecimal.ONE, LocalDate.now().plusDays(5), BigDecimal.ONE));
+                    }
+                    warehouse.clearProducts();
+                }
+            } finally {
+                done.countDown();
+                reader.join();
+            }
+            assertThat(torn).hasValue(0);
+        }
+    }
+
+    @Nested
+    @DisplayName("A TieredProductStore")
+    class TieredProductStoreTests {
+
+        @TempDir
+        Path directory;
+
+        private Product product(int i) {
+            return i % 2 == 0
+                    ? new FoodProduct(UUID.randomUUID(), "Milk " + i, of("Dairy"), BigDecimal.valueOf(i, 2), LocalDate.of(2030, 1, 1).plusDays(i % 100), new BigDecimal("1.000"))
+                    : new ElectronicsProduct(UUID.randomUUID(), "Cable " + i, of("Electronics"), BigDecimal.valueOf(i, 2), 12, new BigDecimal("0.250"));
+        }
+
+        private List<String> describe(Collection<Product> products) {
+            return products.stream().map(p -> p.uuid() + " " + p.name() + " " + p.getCategory() + " " + p.price()).sorted().toList();
+        }
+
+        @Test
+        @DisplayName("✅ should spill cold products to disk and read them back on demand")
+        void should_serveColdProducts_when_hotTierIsFull() throws Exception {
+            List<Product> products = new ArrayList<>();
+            try (TieredProductStore store = new TieredProductStore(directory.resolve("cold.seg"), 100)) {
+                for (int i = 0; i < 1_000; i++) {
+                    products.add(product(i));
+                    store.put(products.get(i));
+                }
+                assertThat(store.stats().hotProducts()).isEqualTo(100);
+                assertThat(store.stats().coldProducts()).isEqualTo(900);
+
+                Product cold = products.get(3);
+                assertThat(store.getProductById(cold.uuid())).get()
+                        .extracting(Product::name, Product::price, p -> ((Shippable) p).weight())
+                        .containsExactly("Cable 3", new BigDecimal("0.03"), new BigDecimal("0.250"));
+                assertThat(store.getProductById(cold.uuid())).isPresent();
+                assertThat(store.getProductById(UUID.randomUUID())).isEmpty();
+                TieredProductStore.Stats stats = store.stats();
+                assertThat(stats.coldHits()).isEqualTo(1);
+                assertThat(stats.hotHits()).isEqualTo(1);
+                assertThat(stats.misses()).isEqualTo(1);
+                assertThat(stats.hotHitRate()).isEqualTo(0.5);
+
+                // Replacing and removing cold products, then scanning, sees only the latest state.
+                Product repriced = products.get(10).withPrice(new BigDecimal("99.99"));
+                products.set(10, repriced);
+                store.put(repriced);
+                assertThat(store.remove(products.remove(20).uuid())).isTrue();
+                assertThat(store.size()).isEqualTo(999);
+                long hotHits = store.stats().hotHits();
+                assertThat(describe(store.getProducts())).isEqualTo(describe(products));
+                assertThat(store.stats().hotHits()).isEqualTo(hotHits);
+                assertThat(store.analyzer().getInventoryStatistics().totalValue())
+                        .isEqualByComparingTo(products.stream().map(Product::price).reduce(BigDecimal.ZERO, BigDecimal::add));
+            }
+            assertThat(directory.resolve("cold.seg")).doesNotExist();
+        }
+
+        @Test
+        @DisplayName("✅ should compact the segment once replaced records outweigh live ones")
+        void should_compactSegment_when_garbageAccumulates() throws Exception {
+            List<Product> products = new ArrayList<>();
+            try (TieredProductStore store = new TieredProductStore(directory.resolve("cold.seg"), 10)) {
+                for (int i = 0; i < 20_000; i++) {
+                    products.add(product(i));
+                    store.put(products.get(i));
+                }
+                for (int round = 1; round <= 2; round++) {
+                    for (int i = 0; i < products.size(); i++) {
+                        Product repriced = products.get(i).withPrice(BigDecimal.valueOf(i + round));
+                        products.set(i, repriced);
+                        store.put(repriced);
+                    }
+                }
+
+                TieredProductStore.Stats stats = store.stats();
+                assertThat(stats.compactions()).isGreaterThanOrEqualTo(1);
+                assertThat(stats.segmentBytes()).isLessThanOrEqualTo(2 * stats.liveColdBytes() + (1 << 20));
+                assertThat(describe(store.getProducts())).isEqualTo(describe(products));
+            }
+        }
+
+        @Test
+        @DisplayName("✅ should stream a view of the store as it was when the view was taken")
+        void should_keepViewStable_when_storeChangesAfterward() throws Exception {
+            List<Product> products = new ArrayList<>();
+            try (TieredProductStore store = new TieredProductStore(directory.resolve("cold.seg"), 10)) {
+                for (int i = 0; i < 20_000; i++) {
+                    products.add(product(i));
+                    store.put(products.get(i));
+                }
+                Collection<Product> view = store.getProducts();
+
+                store.remove(products.get(0).uuid());
+                store.put(products.get(1).withPrice(new BigDecimal("99.99")));
+                store.put(product(20_000));
+                assertThat(store.getProductById(products.get(2).uuid())).isPresent();
+
+                assertThat(view).hasSize(20_000);
+                assertThat(describe(view)).isEqualTo(describe(products));
+                assertThat(describe(view)).isEqualTo(describe(products));
+
+                // Replacing every product leaves enough garbage to compact, which moves the records.
+                for (int i = 0; i < products.size(); i++) {
+                    store.put(products.get(i).withPrice(BigDecimal.valueOf(i)));
+                }
+                assertThat(store.stats().compactions()).isGreaterThanOrEqualTo(1);
+                assertThatThrownBy(() -> describe(view)).isInstanceOf(ConcurrentModificationException.class);
+                assertThat(store.getProducts()).hasSize(20_001);
+            }
+        }
+
+        @Test
+        @DisplayName("❌ should reject products the segment format cannot hold")
+        void should_throwException_when_productTypeUnsupported() throws Exception {
+            try (TieredProductStore store = new TieredProductStore(directory.resolve("cold.seg"), 10)) {
+                Product other = new Product(UUID.randomUUID(), "Gift card", of("Gifts"), BigDecimal.TEN) {
+                    @Override
+                    public String productDetails() {
+                        return "Gift card";
+                    }
+
+                    @Override
+                    protected Product withPrice(BigDecimal newPrice) {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+                assertThatThrownBy(() -> store.put(other)).isInstanceOf(IllegalArgumentException.class);
+                Product organic = new FoodProduct(UUID.randomUUID(), "Organic milk", of("Dairy"), BigDecimal.TEN, null, BigDecimal.ONE) {
+                };
+                assertThatThrownBy(() -> store.put(organic))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessage("Only food and electronics products can be stored.");
+
+                // A date the format cannot hold is caught on the way in, not when the product spills.
+                Product kept = product(1);
+                store.put(kept);
+                Product unencodable = new FoodProduct(UUID.randomUUID(), "Bulk flour", of("Bakery"), BigDecimal.TEN, LocalDate.MAX, BigDecimal.ONE);
+                assertThatThrownBy(() -> store.put(unencodable))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining("Expiration date does not fit");
+                assertThat(store.getProductById(unencodable.uuid())).isEmpty();
+                assertThat(store.getProductById(kept.uuid())).contains(kept);
+                assertThat(store.size()).isEqualTo(1);
+            }
+        }
+
+        @Test
+        @DisplayName("❌ should reject using the store from inside a scan and stay intact")
+        void should_throwException_when_scanReentered() throws Exception {
+            List<Product> products = new ArrayList<>();
+            try (TieredProductStore store = new TieredProductStore(directory.resolve("cold.seg"), 10)) {
+                for (int i = 0; i < 100; i++) {
+                    products.add(product(i));
+                    store.put(products.get(i));
+                }
+                List<Product> scanned = new ArrayList<>();
+                assertThatThrownBy(() -> store.scan(p -> {
+                    scanned.add(p);
+                    if (scanned.size() == 50) {
+                        assertThat(store.size()).isEqualTo(100);
+                        store.getProductById(products.get(0).uuid());
+                    }
+                })).isInstanceOf(IllegalStateException.class);
+                assertThatThrownBy(() -> store.scan(p -> store.remove(p.uuid()))).isInstanceOf(IllegalStateException.class);
+                assertThatThrownBy(() -> store.scan(p -> store.put(p))).isInstanceOf(IllegalStateException.class);
+
+                assertThat(scanned).hasSize(50);
+                assertThat(describe(store.getProducts())).isEqualTo(describe(products));
+                assertThat(store.getProductById(products.get(0).uuid())).isPresent();
+            }
+        }
+    }
 }
 // trigger AI feedback